@@ -0,0 +1,120 @@
+package com.cloudstore.benchmarks;
+
+import com.cloudstore.storage.UploadStreamWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The disk paths of an upload and a download: {@code write} streams a body to disk through
+ * UploadStreamWriter (temp file, then rename) at several buffer sizes, {@code readTransferTo}
+ * copies a file out the way DownloadService does with FileChannel.transferTo, and
+ * {@code readStream} the way a non-local backend is streamed. Files go to {@code -Dbenchmark.dir}
+ * (the system temp directory by default), so point it at the storage volume being evaluated.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DiskIoBenchmark {
+    private static final int TRANSFER_CHUNK = 1048576; // file.download.chunk-size default
+
+    @Param({"1048576", "67108864"})
+    public int size;
+
+    private byte[] payload;
+    private Path dir;
+    private Path source;
+    private Path target;
+
+    // Only the write path has a buffer to tune
+    @State(Scope.Benchmark)
+    public static class Buffer {
+        @Param({"8192", "65536", "1048576"})
+        public int bytes;
+
+        UploadStreamWriter writer;
+
+        @Setup
+        public void setUp() {
+            writer = new UploadStreamWriter(bytes);
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        payload = new byte[size];
+        new Random(5).nextBytes(payload);
+        dir = Files.createTempDirectory(Paths.get(System.getProperty("benchmark.dir", System.getProperty("java.io.tmpdir"))),
+                "cloudstore-bench");
+        source = dir.resolve("source.bin");
+        Files.write(source, payload);
+        target = dir.resolve("target.bin");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteTarget() throws IOException {
+        Files.deleteIfExists(target);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public long write(Buffer buffer) throws IOException {
+        return buffer.writer.write(new ByteArrayInputStream(payload), target);
+    }
+
+    @Benchmark
+    public long readTransferTo() throws IOException {
+        WritableByteChannel sink = Channels.newChannel(OutputStream.nullOutputStream());
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long position = 0;
+            while (position < size) {
+                position += channel.transferTo(position, Math.min(size - position, TRANSFER_CHUNK), sink);
+            }
+            return position;
+        }
+    }
+
+    @Benchmark
+    public long readStream() throws IOException {
+        try (InputStream in = Files.newInputStream(source)) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.cloudstore.benchmarks;
+
+import com.cloudstore.repository.FileRepository;
+import com.cloudstore.service.FileNameIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Name search over one user's files: the in-memory type-ahead index (lookup when warm, and the
+ * build a cold lookup pays) against the substring scan the plain search endpoint falls back to.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileNameSearchBenchmark {
+    private static final long USER_ID = 1L;
+    private static final int LIMIT = 20;
+
+    @Param({"1000", "10000", "100000"})
+    public int files;
+
+    @Param({"rep", "holiday-photo"})
+    public String query;
+
+    private FileNameIndex index;
+    private List<String> names;
+
+    @Setup
+    public void setUp() {
+        names = Fixtures.fileNames(files);
+        List<Object[]> rows = new ArrayList<>(files);
+        for (int i = 0; i < names.size(); i++) {
+            rows.add(new Object[]{(long) i + 1, names.get(i)});
+        }
+        index = new FileNameIndex(repositoryReturning(rows), 10, files, DataSize.ofGigabytes(1));
+        index.suggest(USER_ID, query, LIMIT);
+    }
+
+    @Benchmark
+    public List<Long> indexLookup() {
+        return index.suggest(USER_ID, query, LIMIT);
+    }
+
+    @Benchmark
+    public List<Long> indexBuildAndLookup() {
+        index.invalidate(USER_ID);
+        return index.suggest(USER_ID, query, LIMIT);
+    }
+
+    // Every match, like the search endpoint returns
+    @Benchmark
+    public List<Long> substringScan() {
+        String lowerQuery = query.toLowerCase(Locale.ROOT);
+        List<Long> matches = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            if (names.get(i).toLowerCase(Locale.ROOT).contains(lowerQuery)) {
+                matches.add((long) i + 1);
+            }
+        }
+        return matches;
+    }
+
+    // The index only ever asks the repository for a user's (id, name) rows
+    private static FileRepository repositoryReturning(List<Object[]> rows) {
+        return (FileRepository) Proxy.newProxyInstance(FileRepository.class.getClassLoader(),
+                new Class<?>[]{FileRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findNamesByUserId" -> rows;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "FileRepository(benchmark)";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
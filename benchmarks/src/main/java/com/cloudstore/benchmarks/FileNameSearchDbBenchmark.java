@@ -0,0 +1,178 @@
+package com.cloudstore.benchmarks;
+
+import com.cloudstore.repository.FileRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.postgresql.PGConnection;
+import org.springframework.data.jpa.repository.Query;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The search endpoint's PostgreSQL queries over one user's files: the ranked pg_trgm/tsvector
+ * query {@link FileRepository#searchByName} runs, against the {@code LIKE} fallback used when
+ * pg_trgm is missing. The SQL is read from the repository annotation, so the benchmark follows the
+ * query as it changes. Runs against {@code -Dbenchmark.jdbc-url} (with {@code benchmark.jdbc-user}
+ * and {@code benchmark.jdbc-password}) when given, otherwise a throwaway PostgreSQL container.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileNameSearchDbBenchmark {
+    private static final long USER_ID = 1L;
+    private static final int LIMIT = 20;
+    private static final int COPY_BATCH = 100_000;
+    private static final Pattern NAMED_PARAMETER = Pattern.compile("(?<!:):([A-Za-z]+)");
+
+    // Same shape as the files table, only the columns the search reads
+    private static final String CREATE_TABLE = "CREATE TABLE files (id bigserial PRIMARY KEY, user_id bigint NOT NULL, "
+            + "name varchar(255) NOT NULL, size bigint, favourite boolean NOT NULL DEFAULT false, "
+            + "deleted boolean NOT NULL DEFAULT false, folder_id bigint, created_at timestamp, updated_at timestamp, "
+            + "url varchar(255))";
+    // Mirrors FileSearchService's startup statements
+    private static final String[] INDEXES = {
+            "CREATE EXTENSION IF NOT EXISTS pg_trgm",
+            "CREATE INDEX idx_files_user_id ON files (user_id)",
+            "CREATE INDEX idx_files_name_trgm ON files USING gin (lower(name) gin_trgm_ops)",
+            "CREATE INDEX idx_files_name_tsv ON files USING gin (to_tsvector('simple', name))"
+    };
+    private static final String LIKE_QUERY = "SELECT id, name FROM files WHERE user_id = ? AND deleted = false "
+            + "AND lower(name) LIKE ? ESCAPE '\\' ORDER BY name, id LIMIT ?";
+
+    @Param({"100000", "1000000"})
+    public int files;
+
+    @Param({"rep", "holiday-photo", "holidy"})
+    public String query;
+
+    private PostgreSQLContainer<?> container;
+    private Connection connection;
+    private PreparedStatement ranked;
+    private List<String> rankedParameters;
+    private PreparedStatement like;
+
+    @Setup
+    public void setUp() throws Exception {
+        String url = System.getProperty("benchmark.jdbc-url");
+        if (url != null) {
+            connection = DriverManager.getConnection(url, System.getProperty("benchmark.jdbc-user"),
+                    System.getProperty("benchmark.jdbc-password"));
+        } else {
+            container = new PostgreSQLContainer<>("postgres:16-alpine");
+            container.start();
+            connection = DriverManager.getConnection(container.getJdbcUrl(), container.getUsername(),
+                    container.getPassword());
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS files");
+            statement.execute(CREATE_TABLE);
+        }
+        load(Fixtures.fileNames(files));
+        try (Statement statement = connection.createStatement()) {
+            for (String index : INDEXES) {
+                statement.execute(index);
+            }
+            statement.execute("ANALYZE files");
+        }
+        String sql = FileRepository.class.getMethod("searchByName", Long.class, String.class, String.class,
+                String.class, int.class, int.class).getAnnotation(Query.class).value();
+        rankedParameters = new ArrayList<>();
+        Matcher matcher = NAMED_PARAMETER.matcher(sql);
+        while (matcher.find()) {
+            rankedParameters.add(matcher.group(1));
+        }
+        ranked = connection.prepareStatement(matcher.replaceAll("?"));
+        like = connection.prepareStatement(LIKE_QUERY);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        if (connection != null) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS files");
+            }
+            connection.close();
+        }
+        if (container != null) {
+            container.stop();
+        }
+    }
+
+    @Benchmark
+    public List<Long> rankedSearch() throws SQLException {
+        String normalized = query.toLowerCase(Locale.ROOT);
+        String escaped = escapeLike(normalized);
+        for (int i = 0; i < rankedParameters.size(); i++) {
+            switch (rankedParameters.get(i)) {
+                case "userId" -> ranked.setLong(i + 1, USER_ID);
+                case "query" -> ranked.setString(i + 1, normalized);
+                case "pattern" -> ranked.setString(i + 1, "%" + escaped + "%");
+                case "prefix" -> ranked.setString(i + 1, escaped + "%");
+                case "limit" -> ranked.setInt(i + 1, LIMIT);
+                case "offset" -> ranked.setInt(i + 1, 0);
+                default -> throw new IllegalStateException("Unknown parameter " + rankedParameters.get(i));
+            }
+        }
+        return ids(ranked);
+    }
+
+    @Benchmark
+    public List<Long> likeSearch() throws SQLException {
+        like.setLong(1, USER_ID);
+        like.setString(2, "%" + escapeLike(query.toLowerCase(Locale.ROOT)) + "%");
+        like.setInt(3, LIMIT);
+        return ids(like);
+    }
+
+    // COPY in batches, so a million rows load in seconds and never sit in memory as one string
+    private void load(List<String> names) throws Exception {
+        var copy = connection.unwrap(PGConnection.class).getCopyAPI();
+        for (int start = 0; start < names.size(); start += COPY_BATCH) {
+            StringBuilder rows = new StringBuilder();
+            for (int i = start; i < Math.min(start + COPY_BATCH, names.size()); i++) {
+                rows.append(USER_ID).append('\t').append(names.get(i)).append('\t').append(i).append('\n');
+            }
+            copy.copyIn("COPY files (user_id, name, size) FROM STDIN", new StringReader(rows.toString()));
+        }
+    }
+
+    private static List<Long> ids(PreparedStatement statement) throws SQLException {
+        List<Long> ids = new ArrayList<>(LIMIT);
+        try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                ids.add(rs.getLong(1));
+            }
+        }
+        return ids;
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
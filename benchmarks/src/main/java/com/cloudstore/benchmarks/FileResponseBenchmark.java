@@ -0,0 +1,73 @@
+package com.cloudstore.benchmarks;
+
+import com.cloudstore.dto.FileResponse;
+import com.cloudstore.model.File;
+import com.cloudstore.service.FileService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.objenesis.ObjenesisStd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Building a file listing response: entity to DTO mapping and JSON serialization
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileResponseBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int files;
+
+    private FileService fileService;
+    private ObjectMapper objectMapper;
+    private List<File> entities;
+    private List<FileResponse> responses;
+
+    @Setup
+    public void setUp() {
+        // toResponse reads only the entity, so the service's collaborators are never needed
+        fileService = new ObjenesisStd().newInstance(FileService.class);
+        // Same serialization settings Spring Boot applies to controller responses
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        entities = Fixtures.files(files);
+        responses = toResponses();
+    }
+
+    @Benchmark
+    public List<FileResponse> toResponses() {
+        List<FileResponse> result = new ArrayList<>(entities.size());
+        for (File file : entities) {
+            result.add(fileService.toResponse(file));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(responses);
+    }
+
+    @Benchmark
+    public byte[] toResponsesAndSerialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(toResponses());
+    }
+}
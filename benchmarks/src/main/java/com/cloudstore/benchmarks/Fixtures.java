@@ -0,0 +1,61 @@
+package com.cloudstore.benchmarks;
+
+import com.cloudstore.model.File;
+import com.cloudstore.model.Folder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Deterministic test data shared by the benchmarks, so runs are comparable
+final class Fixtures {
+    private static final String[] WORDS = {
+            "invoice", "report", "holiday", "photo", "scan", "draft", "final", "budget", "meeting", "notes",
+            "contract", "summary", "design", "backup", "project", "video", "slides", "receipt", "resume", "plan"
+    };
+    private static final String[] EXTENSIONS = {"pdf", "jpg", "png", "docx", "xlsx", "mp4", "zip", "txt"};
+
+    private Fixtures() {
+    }
+
+    static List<String> fileNames(int count) {
+        Random random = new Random(42);
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = WORDS[random.nextInt(WORDS.length)] + "-" + WORDS[random.nextInt(WORDS.length)]
+                    + " " + (2000 + random.nextInt(25)) + "-" + i;
+            if (random.nextInt(10) == 0) {
+                name += "_compressed";
+            }
+            names.add(name + "." + EXTENSIONS[random.nextInt(EXTENSIONS.length)]);
+        }
+        return names;
+    }
+
+    static List<File> files(int count) {
+        Random random = new Random(7);
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 0, 0);
+        List<Folder> folders = new ArrayList<>();
+        for (long id = 1; id <= 50; id++) {
+            folders.add(Folder.builder().id(id).name("folder-" + id).build());
+        }
+        List<String> names = fileNames(count);
+        List<File> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            LocalDateTime created = base.plusMinutes(random.nextInt(500_000));
+            files.add(File.builder()
+                    .id((long) i + 1)
+                    .name(names.get(i))
+                    .size((long) random.nextInt(50_000_000))
+                    .favourite(random.nextInt(20) == 0)
+                    .deleted(false)
+                    .folder(random.nextBoolean() ? folders.get(random.nextInt(folders.size())) : null)
+                    .url(random.nextInt(5) == 0 ? "https://res.cloudinary.com/demo/raw/upload/" + i : null)
+                    .createdAt(created)
+                    .updatedAt(created.plusMinutes(random.nextInt(1000)))
+                    .build());
+        }
+        return files;
+    }
+}
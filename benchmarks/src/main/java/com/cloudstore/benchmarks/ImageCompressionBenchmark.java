@@ -0,0 +1,97 @@
+package com.cloudstore.benchmarks;
+
+import net.coobird.thumbnailator.Thumbnails;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thumbnailator as the service uses it: {@code thumbnail} follows ThumbnailService (bounded size,
+ * RGB, JPEG at 0.8) and {@code recompress} the image compression job (same dimensions, JPEG at
+ * 0.7), both starting from encoded JPEG bytes of several source sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ImageCompressionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Source {
+        @Param({"640", "1920", "4000"})
+        public int width;
+
+        byte[] jpeg;
+
+        @Setup
+        public void setUp() throws IOException {
+            int height = width * 3 / 4;
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = image.createGraphics();
+            graphics.setPaint(new GradientPaint(0, 0, Color.ORANGE, width, height, Color.BLUE));
+            graphics.fillRect(0, 0, width, height);
+            // Noise, so the encoder sees photo-like detail rather than a flat gradient
+            Random random = new Random(3);
+            for (int i = 0; i < width * height / 20; i++) {
+                image.setRGB(random.nextInt(width), random.nextInt(height), random.nextInt(0xFFFFFF));
+            }
+            graphics.dispose();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, "jpeg", out);
+            jpeg = out.toByteArray();
+        }
+    }
+
+    // The ThumbnailService sizes: small, medium, large
+    @State(Scope.Benchmark)
+    public static class Bound {
+        @Param({"128", "512", "1280"})
+        public int pixels;
+    }
+
+    @Benchmark
+    public byte[] thumbnail(Source source, Bound bound) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(source.jpeg));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Thumbnails.Builder<BufferedImage> builder = Thumbnails.of(image);
+        if (Math.max(image.getWidth(), image.getHeight()) > bound.pixels) {
+            builder.size(bound.pixels, bound.pixels);
+        } else {
+            builder.scale(1.0);
+        }
+        BufferedImage rendered = builder.imageType(BufferedImage.TYPE_INT_RGB).asBufferedImage();
+        Thumbnails.of(rendered).scale(1.0).outputFormat("jpeg").outputQuality(0.8).toOutputStream(out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] recompress(Source source) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Thumbnails.of(new ByteArrayInputStream(source.jpeg))
+                .scale(1.0)
+                .outputQuality(0.7f)
+                .outputFormat("jpg")
+                .toOutputStream(out);
+        return out.toByteArray();
+    }
+}
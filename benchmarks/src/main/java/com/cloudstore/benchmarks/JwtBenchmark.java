@@ -0,0 +1,60 @@
+package com.cloudstore.benchmarks;
+
+import com.cloudstore.security.JwtUtil;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// The per-request cost of JwtAuthenticationFilter before any user lookup
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtBenchmark {
+    private static final String SECRET = "benchmark-secret-benchmark-secret-benchmark-secret-0123456789";
+
+    private JwtUtil jwtUtil;
+    private String token;
+    private String badSignature;
+
+    @Setup
+    public void setUp() {
+        jwtUtil = new JwtUtil(SECRET, TimeUnit.HOURS.toMillis(1));
+        token = jwtUtil.generateToken(42L, "bench@example.com");
+        char last = token.charAt(token.length() - 1);
+        badSignature = token.substring(0, token.length() - 1) + (last == 'A' ? 'B' : 'A');
+    }
+
+    @Benchmark
+    public String generate() {
+        return jwtUtil.generateToken(42L, "bench@example.com");
+    }
+
+    @Benchmark
+    public Claims parseValid() {
+        return jwtUtil.parseValidClaims(token).orElseThrow();
+    }
+
+    @Benchmark
+    public Optional<Claims> rejectBadSignature() {
+        return jwtUtil.parseValidClaims(badSignature);
+    }
+
+    @Benchmark
+    public Long parseAndReadUserId() {
+        return jwtUtil.getUserId(jwtUtil.parseValidClaims(token).orElseThrow());
+    }
+}
@@ -0,0 +1,77 @@
+package com.cloudstore.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * The archive compression job: one file zipped into memory. {@code defaultLevel} is what the job
+ * does today; {@code fastestLevel} shows what trading ratio for speed would buy. Text compresses
+ * well, random bytes stand in for already-compressed media.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ZipArchiveBenchmark {
+    @Param({"65536", "1048576", "16777216"})
+    public int size;
+
+    @Param({"text", "random"})
+    public String content;
+
+    private byte[] data;
+
+    @Setup
+    public void setUp() {
+        data = new byte[size];
+        if ("random".equals(content)) {
+            new Random(11).nextBytes(data);
+            return;
+        }
+        byte[] line = String.join("\n", Fixtures.fileNames(1000)).getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < size; i += line.length) {
+            System.arraycopy(line, 0, data, i, Math.min(line.length, size - i));
+        }
+    }
+
+    @Benchmark
+    public byte[] defaultLevel() throws IOException {
+        return zip(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    @Benchmark
+    public byte[] fastestLevel() throws IOException {
+        return zip(Deflater.BEST_SPEED);
+    }
+
+    private byte[] zip(int level) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.setLevel(level);
+            zip.putNextEntry(new ZipEntry("file.bin"));
+            zip.write(data);
+            zip.closeEntry();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,2 @@
+-- Backs the recursive folder tree walk (children of a folder)
+CREATE INDEX IF NOT EXISTS idx_folders_parent_id ON folders(parent_id);
@@ -0,0 +1,13 @@
+-- Materialized folder paths (/<id>/<id>/.../) for breadcrumbs, subtree listing and subtree sizes
+ALTER TABLE folders ADD COLUMN IF NOT EXISTS path VARCHAR(2048);
+ALTER TABLE folders ADD COLUMN IF NOT EXISTS depth INTEGER;
+
+WITH RECURSIVE tree AS (
+    SELECT id, CAST('/' || id || '/' AS VARCHAR(2048)) AS path, 0 AS depth FROM folders WHERE parent_id IS NULL
+    UNION ALL
+    SELECT c.id, CAST(t.path || c.id || '/' AS VARCHAR(2048)), t.depth + 1 FROM folders c JOIN tree t ON c.parent_id = t.id
+)
+UPDATE folders f SET path = tree.path, depth = tree.depth FROM tree WHERE f.id = tree.id;
+
+-- varchar_pattern_ops so prefix LIKE uses the index under any collation
+CREATE INDEX IF NOT EXISTS idx_folders_user_path ON folders(user_id, path varchar_pattern_ops);
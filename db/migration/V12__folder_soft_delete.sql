@@ -0,0 +1,4 @@
+-- Deleted folder subtrees are marked here and purged in the background
+ALTER TABLE folders ADD COLUMN IF NOT EXISTS deleted BOOLEAN NOT NULL DEFAULT FALSE;
+ALTER TABLE folders ADD COLUMN IF NOT EXISTS deleted_at TIMESTAMP;
+CREATE INDEX IF NOT EXISTS idx_folders_deleted_depth ON folders(deleted, depth);
@@ -0,0 +1,18 @@
+-- Incrementally maintained storage counters; UsageService reconciles them against files
+ALTER TABLE users ADD COLUMN IF NOT EXISTS storage_quota BIGINT;
+
+CREATE TABLE IF NOT EXISTS user_usage (
+    user_id BIGINT PRIMARY KEY,
+    file_count BIGINT NOT NULL DEFAULT 0,
+    total_bytes BIGINT NOT NULL DEFAULT 0,
+    trash_file_count BIGINT NOT NULL DEFAULT 0,
+    trash_bytes BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS folder_usage (
+    folder_id BIGINT PRIMARY KEY,
+    user_id BIGINT,
+    file_count BIGINT NOT NULL DEFAULT 0,
+    total_bytes BIGINT NOT NULL DEFAULT 0
+);
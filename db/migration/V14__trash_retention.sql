@@ -0,0 +1,4 @@
+-- When a file went to the trash, so the trash reaper can purge it after the retention period
+ALTER TABLE files ADD COLUMN IF NOT EXISTS deleted_at TIMESTAMP;
+UPDATE files SET deleted_at = updated_at WHERE deleted = true AND deleted_at IS NULL;
+CREATE INDEX IF NOT EXISTS idx_files_deleted_deleted_at ON files(deleted, deleted_at);
@@ -0,0 +1,11 @@
+-- Set by the storage consistency scanner while a row's bytes are missing from disk
+ALTER TABLE blobs ADD COLUMN IF NOT EXISTS missing_at TIMESTAMP;
+ALTER TABLE files ADD COLUMN IF NOT EXISTS missing_at TIMESTAMP;
+
+-- Where each scan stopped, so the next run resumes there
+CREATE TABLE IF NOT EXISTS storage_scan_checkpoints (
+    scope VARCHAR(64) PRIMARY KEY,
+    position VARCHAR(64),
+    pass_started_at TIMESTAMP,
+    updated_at TIMESTAMP
+);
@@ -0,0 +1,28 @@
+-- Resumable upload sessions and the byte ranges received for them
+CREATE TABLE IF NOT EXISTS upload_sessions (
+    id VARCHAR(255) PRIMARY KEY,
+    user_id BIGINT REFERENCES users(id),
+    file_name VARCHAR(255) NOT NULL,
+    total_size BIGINT NOT NULL,
+    folder_id BIGINT REFERENCES folders(id),
+    temp_path VARCHAR(255) NOT NULL,
+    committing BOOLEAN NOT NULL DEFAULT FALSE,
+    expires_at TIMESTAMP,
+    created_at TIMESTAMP,
+    updated_at TIMESTAMP
+);
+
+-- Sessions created by schema updates before this migration lack the commit claim
+ALTER TABLE upload_sessions ADD COLUMN IF NOT EXISTS committing BOOLEAN NOT NULL DEFAULT FALSE;
+
+CREATE INDEX IF NOT EXISTS idx_upload_sessions_expires_at ON upload_sessions(expires_at);
+
+CREATE TABLE IF NOT EXISTS upload_chunks (
+    id BIGSERIAL PRIMARY KEY,
+    session_id VARCHAR(255) REFERENCES upload_sessions(id),
+    start_offset BIGINT NOT NULL,
+    end_offset BIGINT NOT NULL,
+    created_at TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_upload_chunks_session_id ON upload_chunks(session_id);
@@ -0,0 +1,5 @@
+-- Composite indexes backing keyset-paginated file listings
+CREATE INDEX IF NOT EXISTS idx_files_user_deleted_created ON files(user_id, deleted, created_at, id);
+CREATE INDEX IF NOT EXISTS idx_files_user_deleted_name ON files(user_id, deleted, name, id);
+CREATE INDEX IF NOT EXISTS idx_files_folder_deleted_created ON files(folder_id, deleted, created_at, id);
+CREATE INDEX IF NOT EXISTS idx_files_folder_deleted_name ON files(folder_id, deleted, name, id);
@@ -0,0 +1,4 @@
+-- Trigram and full-text indexes for file name search
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS idx_files_name_trgm ON files USING gin (lower(name) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_files_name_tsv ON files USING gin (to_tsvector('simple', name));
@@ -0,0 +1,21 @@
+CREATE TABLE IF NOT EXISTS compression_jobs (
+    id VARCHAR(255) PRIMARY KEY,
+    user_id BIGINT REFERENCES users(id),
+    file_id BIGINT REFERENCES files(id),
+    type VARCHAR(255) NOT NULL,
+    quality REAL,
+    bitrate INTEGER,
+    format VARCHAR(255),
+    status VARCHAR(16) NOT NULL,
+    progress DOUBLE PRECISION,
+    error VARCHAR(1000),
+    result_file_id BIGINT,
+    compressed_size BIGINT,
+    compression_ratio DOUBLE PRECISION,
+    created_at TIMESTAMP,
+    updated_at TIMESTAMP,
+    started_at TIMESTAMP,
+    finished_at TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_compression_jobs_status_type_created ON compression_jobs(status, type, created_at);
@@ -0,0 +1,2 @@
+ALTER TABLE compression_jobs ADD COLUMN IF NOT EXISTS crf INTEGER;
+ALTER TABLE compression_jobs ADD COLUMN IF NOT EXISTS resolution VARCHAR(255);
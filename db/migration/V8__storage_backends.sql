@@ -0,0 +1,3 @@
+-- Which StorageBackend holds each blob; NULL means the local sharded backend
+ALTER TABLE blobs ADD COLUMN IF NOT EXISTS storage_backend VARCHAR(32);
+ALTER TABLE files ADD COLUMN IF NOT EXISTS storage_backend VARCHAR(32);
@@ -0,0 +1,12 @@
+CREATE TABLE IF NOT EXISTS derived_assets (
+    id BIGSERIAL PRIMARY KEY,
+    file_id BIGINT NOT NULL REFERENCES files(id),
+    variant VARCHAR(32) NOT NULL,
+    width INTEGER,
+    height INTEGER,
+    size BIGINT,
+    content_hash VARCHAR(64) NOT NULL,
+    storage_backend VARCHAR(32),
+    created_at TIMESTAMP,
+    CONSTRAINT uk_derived_assets_file_variant UNIQUE (file_id, variant)
+);
@@ -6,10 +6,16 @@ import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.util.Map;
+
 @SpringBootApplication
 public class CloudstoreBackendApplication {
     public static void main(String[] args) {
-        SpringApplication.run(CloudstoreBackendApplication.class, args);
+        SpringApplication application = new SpringApplication(CloudstoreBackendApplication.class);
+        // Lowest-precedence defaults; application.properties and the environment override them
+        application.setDefaultProperties(Map.of(
+                "management.endpoints.web.exposure.include", "health,prometheus"));
+        application.run(args);
     }
 
     @Bean
@@ -0,0 +1,22 @@
+package com.cloudstore.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JpaConfig {
+
+    // JDBC statement batching and per-request query counting; explicit spring.jpa.properties.hibernate.* settings still win
+    @Bean
+    public HibernatePropertiesCustomizer jdbcBatchingCustomizer(@Value("${jpa.jdbc.batch-size:50}") int batchSize) {
+        return properties -> {
+            properties.putIfAbsent("hibernate.jdbc.batch_size", batchSize);
+            properties.putIfAbsent("hibernate.order_inserts", true);
+            properties.putIfAbsent("hibernate.order_updates", true);
+            properties.putIfAbsent("hibernate.jdbc.batch_versioned_data", true);
+            properties.putIfAbsent("hibernate.session_factory.statement_inspector", new QueryCountInspector());
+        };
+    }
+}
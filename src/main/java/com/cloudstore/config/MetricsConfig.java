@@ -0,0 +1,37 @@
+package com.cloudstore.config;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+@Configuration
+public class MetricsConfig {
+    private static final List<String> PREFIXES = List.of("cloudstore.", "http.server.requests", "hikaricp.connections");
+
+    // Timers get histograms (quantiles aggregate across instances in Prometheus) plus local percentiles;
+    // summaries only local percentiles, since byte and count histograms need hundreds of buckets per series.
+    // Explicit management.metrics.distribution.* settings still win
+    @Bean
+    public MeterFilter latencyDistributions() {
+        DistributionStatisticConfig timers = DistributionStatisticConfig.builder()
+                .percentilesHistogram(true)
+                .percentiles(0.5, 0.95, 0.99)
+                .build();
+        DistributionStatisticConfig summaries = DistributionStatisticConfig.builder()
+                .percentiles(0.5, 0.95, 0.99)
+                .build();
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (PREFIXES.stream().noneMatch(prefix -> id.getName().startsWith(prefix))) {
+                    return config;
+                }
+                return config.merge(id.getType() == Meter.Type.TIMER ? timers : summaries);
+            }
+        };
+    }
+}
@@ -0,0 +1,30 @@
+package com.cloudstore.config;
+
+import jakarta.servlet.MultipartConfigElement;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.MultipartConfigFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+@Configuration
+public class MultipartConfig {
+
+    // Parts larger than the memory threshold are spooled to disk by the container instead of
+    // being held on the heap, which caps the per-upload memory ceiling.
+    @Bean
+    public MultipartConfigElement multipartConfigElement(
+            @Value("${file.upload.memory-threshold:256KB}") DataSize memoryThreshold,
+            @Value("${file.upload.max-file-size:10GB}") DataSize maxFileSize,
+            @Value("${file.upload.max-request-size:20GB}") DataSize maxRequestSize,
+            @Value("${file.upload.temp-dir:}") String tempDir) {
+        MultipartConfigFactory factory = new MultipartConfigFactory();
+        factory.setFileSizeThreshold(memoryThreshold);
+        factory.setMaxFileSize(maxFileSize);
+        factory.setMaxRequestSize(maxRequestSize);
+        if (!tempDir.isEmpty()) {
+            factory.setLocation(tempDir);
+        }
+        return factory.createMultipartConfig();
+    }
+}
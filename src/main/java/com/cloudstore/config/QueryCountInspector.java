@@ -0,0 +1,26 @@
+package com.cloudstore.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts the SQL statements Hibernate prepares on the current thread, so {@link RequestLoggingFilter}
+ * can report how many queries each request ran. Statements issued on worker threads (parallel
+ * upload writers, compression jobs) or through {@code JdbcTemplate} are not counted.
+ */
+public class QueryCountInspector implements StatementInspector {
+    private static final ThreadLocal<long[]> COUNT = ThreadLocal.withInitial(() -> new long[1]);
+
+    @Override
+    public String inspect(String sql) {
+        COUNT.get()[0]++;
+        return sql;
+    }
+
+    public static void reset() {
+        COUNT.get()[0] = 0;
+    }
+
+    public static long count() {
+        return COUNT.get()[0];
+    }
+}
@@ -0,0 +1,120 @@
+package com.cloudstore.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Tags every request with a request id in the MDC (and the {@code X-Request-Id} response header)
+ * and writes one summary line per request. Summaries are sampled per endpoint pattern; failed and
+ * slow requests are always logged. Credentials in the query string are redacted. The number of SQL
+ * statements each request ran is logged and recorded per endpoint as {@code cloudstore.db.queries}.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestLoggingFilter extends OncePerRequestFilter {
+    public static final String MDC_REQUEST_ID = "requestId";
+    public static final String MDC_USER_ID = "userId";
+    private static final String REQUEST_ID_HEADER = "X-Request-Id";
+    private static final Pattern VALID_REQUEST_ID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+    private static final Pattern SECRET_PARAMS = Pattern.compile("(?i)((?:^|&)(?:token|access_token|code|password)=)[^&]*");
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final Map<String, Double> sampleRates = new LinkedHashMap<>();
+    private final double defaultSampleRate;
+    private final long slowRequestMillis;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * @param sampleRates comma-separated {@code pattern=rate} pairs, e.g.
+     *                    {@code /api/files/search/**=0.05,/api/files/**=0.2}; first match wins
+     */
+    public RequestLoggingFilter(
+            @Value("${logging.requests.sample-rates:}") String sampleRates,
+            @Value("${logging.requests.default-sample-rate:1.0}") double defaultSampleRate,
+            @Value("${logging.requests.slow-threshold-ms:2000}") long slowRequestMillis,
+            MeterRegistry meterRegistry) {
+        for (String pair : sampleRates.split(",")) {
+            int separator = pair.lastIndexOf('=');
+            if (separator > 0) {
+                this.sampleRates.put(pair.substring(0, separator).trim(), Double.parseDouble(pair.substring(separator + 1).trim()));
+            }
+        }
+        this.defaultSampleRate = defaultSampleRate;
+        this.slowRequestMillis = slowRequestMillis;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String requestId = request.getHeader(REQUEST_ID_HEADER);
+        if (requestId == null || !VALID_REQUEST_ID.matcher(requestId).matches()) {
+            requestId = UUID.randomUUID().toString();
+        }
+        MDC.put(MDC_REQUEST_ID, requestId);
+        response.setHeader(REQUEST_ID_HEADER, requestId);
+        long start = System.nanoTime();
+        QueryCountInspector.reset();
+        int status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+        try {
+            filterChain.doFilter(request, response);
+            status = response.getStatus();
+        } finally {
+            long durationMs = (System.nanoTime() - start) / 1_000_000;
+            long queries = QueryCountInspector.count();
+            recordQueries(request, queries);
+            if (status >= 500 || durationMs >= slowRequestMillis || sampled(request.getRequestURI())) {
+                log.info("method={} path={} query=\"{}\" status={} durationMs={} queries={}",
+                        request.getMethod(), request.getRequestURI(), redact(request.getQueryString()), status, durationMs, queries);
+            }
+            MDC.clear();
+        }
+    }
+
+    // Tagged with the matched handler pattern (/api/files/{id}), never the raw path
+    private void recordQueries(HttpServletRequest request, long queries) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        DistributionSummary.builder("cloudstore.db.queries")
+                .description("SQL statements run by one request")
+                .tag("method", request.getMethod())
+                .tag("uri", pattern != null ? pattern.toString() : "UNKNOWN")
+                .register(meterRegistry)
+                .record(queries);
+    }
+
+    private boolean sampled(String path) {
+        double rate = defaultSampleRate;
+        for (Map.Entry<String, Double> entry : sampleRates.entrySet()) {
+            if (pathMatcher.match(entry.getKey(), path)) {
+                rate = entry.getValue();
+                break;
+            }
+        }
+        return rate >= 1.0 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    static String redact(String query) {
+        return query == null ? "" : SECRET_PARAMS.matcher(query).replaceAll("$1[redacted]");
+    }
+}
@@ -0,0 +1,46 @@
+package com.cloudstore.config;
+
+import com.cloudstore.storage.InMemoryStorageBackend;
+import com.cloudstore.storage.ShardedLocalStorageBackend;
+import com.cloudstore.storage.StorageBackendRegistry;
+import com.cloudstore.storage.TieredStorageBackend;
+import com.cloudstore.storage.UploadStreamWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+
+@Configuration
+public class StorageConfig {
+
+    // Same directory layout the blob store has always written, so existing blobs stay readable
+    @Bean
+    public ShardedLocalStorageBackend localStorageBackend(@Value("${file.upload-dir:uploads}") String uploadDir,
+                                                          UploadStreamWriter uploadStreamWriter) {
+        return new ShardedLocalStorageBackend(StorageBackendRegistry.LOCAL, Paths.get(uploadDir, "blobs"), uploadStreamWriter);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "storage.tiered.enabled", havingValue = "true")
+    public TieredStorageBackend tieredStorageBackend(
+            @Value("${storage.tiered.hot-dir:uploads/hot}") String hotDir,
+            @Value("${storage.tiered.cold-dir:uploads/cold}") String coldDir,
+            @Value("${storage.tiered.demote-after:7d}") Duration demoteAfter,
+            @Value("${storage.tiered.hot-max-size:50GB}") DataSize hotMaxSize,
+            UploadStreamWriter uploadStreamWriter) {
+        return new TieredStorageBackend(
+                new ShardedLocalStorageBackend("tiered-hot", Paths.get(hotDir), uploadStreamWriter),
+                new ShardedLocalStorageBackend("tiered-cold", Paths.get(coldDir), uploadStreamWriter),
+                demoteAfter, hotMaxSize.toBytes());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "storage.memory.enabled", havingValue = "true")
+    public InMemoryStorageBackend inMemoryStorageBackend() {
+        return new InMemoryStorageBackend();
+    }
+}
@@ -1,12 +1,28 @@
 package com.cloudstore.controller;
 
+import com.cloudstore.dto.BatchFileRequest;
+import com.cloudstore.dto.BatchFileResponse;
 import com.cloudstore.dto.CompressionRequest;
-import com.cloudstore.dto.CompressionResponse;
+import com.cloudstore.dto.CompressionJobResponse;
+import com.cloudstore.dto.FilePageResponse;
 import com.cloudstore.dto.FileResponse;
 import com.cloudstore.dto.RegisterCloudFileRequest;
+import com.cloudstore.dto.UploadFilesResponse;
+import com.cloudstore.model.DerivedAsset;
+import com.cloudstore.model.File;
 import com.cloudstore.model.User;
+import com.cloudstore.service.CompressionJobService;
+import com.cloudstore.service.DownloadService;
+import com.cloudstore.service.FileSearchService;
 import com.cloudstore.service.FileService;
+import com.cloudstore.service.ThumbnailService;
+import com.cloudstore.storage.RemoteFileCache;
+import com.cloudstore.storage.StorageBackendRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
@@ -20,23 +36,56 @@ import java.util.Optional;
 @RequestMapping("/api/files")
 @RequiredArgsConstructor
 public class FileController {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final FileService fileService;
+    private final DownloadService downloadService;
+    private final FileSearchService fileSearchService;
+    private final CompressionJobService compressionJobService;
+    private final RemoteFileCache remoteFileCache;
+    private final ThumbnailService thumbnailService;
+    private final StorageBackendRegistry storageBackendRegistry;
 
-    // List all files for the authenticated user
+    // List the authenticated user's files (sort=createdAt|name, order=asc|desc). All of them unless a
+    // limit or cursor is given; then one page, with the cursor for the next in the X-Next-Cursor header
     @GetMapping("")
     public ResponseEntity<List<FileResponse>> listFiles(
             @AuthenticationPrincipal User user,
-            @RequestParam(required = false) Long folderId) {
-        return ResponseEntity.ok(fileService.listFilesByUser(user, Optional.ofNullable(folderId)));
+            @RequestParam(required = false) Long folderId,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String order,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        FilePageResponse page = fileService.listFilesByUser(user, Optional.ofNullable(folderId), sort, order, cursor, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
     }
 
-    // Upload multiple files for the authenticated user
+    // Upload multiple files for the authenticated user; optional sha256 values (one per file, same order)
+    // let content that is already stored skip the disk write. All or nothing: if any file can't be
+    // stored the request fails and none is recorded
     @PostMapping("/upload")
     public ResponseEntity<List<FileResponse>> uploadFiles(
             @AuthenticationPrincipal User user,
             @RequestParam("files") MultipartFile[] files,
-            @RequestParam(value = "folderId", required = false) Long folderId) throws java.io.IOException {
-        return ResponseEntity.ok(fileService.uploadFilesForUser(user, files, Optional.ofNullable(folderId)));
+            @RequestParam(value = "folderId", required = false) Long folderId,
+            @RequestParam(value = "sha256", required = false) List<String> contentHashes) throws java.io.IOException {
+        return ResponseEntity.ok(fileService.uploadFilesForUser(user, files, Optional.ofNullable(folderId), contentHashes, false)
+                .getFiles());
+    }
+
+    // Keeps the files that could be stored and reports the others, with 207 when some failed
+    @PostMapping("/upload/batch")
+    public ResponseEntity<UploadFilesResponse> uploadFilesBatch(
+            @AuthenticationPrincipal User user,
+            @RequestParam("files") MultipartFile[] files,
+            @RequestParam(value = "folderId", required = false) Long folderId,
+            @RequestParam(value = "sha256", required = false) List<String> contentHashes) throws java.io.IOException {
+        UploadFilesResponse result = fileService.uploadFilesForUser(user, files, Optional.ofNullable(folderId), contentHashes, true);
+        return ResponseEntity.status(result.getFailures().isEmpty() ? HttpStatus.OK : HttpStatus.MULTI_STATUS).body(result);
     }
 
     // Soft-delete a file (only if owned by user)
@@ -48,6 +97,15 @@ public class FileController {
         return ResponseEntity.ok().build();
     }
 
+    // Apply one operation (DELETE, RESTORE, FAVOURITE, UNFAVOURITE, MOVE, PERMANENT_DELETE) to up to
+    // 1000 files in one request; the response reports OK or NOT_FOUND for every id
+    @PostMapping("/batch")
+    public ResponseEntity<BatchFileResponse> batchUpdate(
+            @AuthenticationPrincipal User user,
+            @RequestBody BatchFileRequest request) {
+        return ResponseEntity.ok(fileService.batchUpdateByUser(user, request));
+    }
+
     // Rename a file (only if owned by user)
     @PostMapping("/rename/{id}")
     public ResponseEntity<FileResponse> renameFile(
@@ -65,15 +123,48 @@ public class FileController {
         return ResponseEntity.ok(fileService.toggleFavouriteByUser(user, id));
     }
 
-    // Download a file (only if owned by user)
+    // Download a file (only if owned by user); honours Range, If-Range and conditional headers
     @GetMapping("/{id}/download")
-    public org.springframework.http.ResponseEntity<byte[]> downloadFile(
+    public void downloadFile(
+            @AuthenticationPrincipal User user,
+            @PathVariable Long id,
+            HttpServletRequest request,
+            HttpServletResponse response) throws java.io.IOException {
+        File file = fileService.getFileByUser(user, id);
+        if (file.getUrl() != null && !file.getUrl().isEmpty()) {
+            // Proxied through the on-disk cache, so repeat downloads don't go back to the origin
+            downloadService.serve(remoteFileCache.open(file.getUrl()), file.getName(), null, request, response);
+        } else {
+            downloadService.serveStoredFile(file, request, response);
+        }
+    }
+
+    // Thumbnail of an image file (size=small|medium|large), WebP when the client accepts it.
+    // 202 with Retry-After while the rendition is still being generated
+    @GetMapping("/{id}/thumbnail")
+    public void getThumbnail(
             @AuthenticationPrincipal User user,
-            @PathVariable Long id) throws java.io.IOException {
-        byte[] data = fileService.downloadFileByUser(user, id);
-        return org.springframework.http.ResponseEntity.ok()
-                .header("Content-Disposition", "attachment; filename=\"file_" + id + "\"")
-                .body(data);
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "medium") String size,
+            HttpServletRequest request,
+            HttpServletResponse response) throws java.io.IOException {
+        File file = fileService.getFileByUser(user, id);
+        String format = thumbnailService.negotiateFormat(request.getHeader(HttpHeaders.ACCEPT));
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        Optional<DerivedAsset> asset = thumbnailService.getOrGenerate(file, size, format);
+        if (asset.isEmpty()) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.setStatus(HttpServletResponse.SC_ACCEPTED);
+            return;
+        }
+        // A file's content never changes after upload, so neither do its renditions
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=31536000, immutable");
+        String hash = asset.get().getContentHash();
+        String baseName = file.getName().contains(".")
+                ? file.getName().substring(0, file.getName().lastIndexOf('.'))
+                : file.getName();
+        downloadService.serve(storageBackendRegistry.get(asset.get().getStorageBackend()), hash,
+                baseName + "-" + size + "." + format, hash, request, response);
     }
 
     // Get download URL for a file (only if owned by user)
@@ -111,12 +202,23 @@ public class FileController {
         return ResponseEntity.ok().build();
     }
 
-    // Search files by name (only for authenticated user)
+    // Search files by name (only for authenticated user), ranked and paginated
     @GetMapping("/search")
     public ResponseEntity<List<FileResponse>> searchFiles(
             @AuthenticationPrincipal User user,
-            @RequestParam("query") String query) {
-        return ResponseEntity.ok(fileService.searchFilesByNameForUser(user, query));
+            @RequestParam("query") String query,
+            @RequestParam(required = false) Integer page,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(fileSearchService.search(user, query, page, limit));
+    }
+
+    // Type-ahead suggestions: files with a word in their name starting with the prefix
+    @GetMapping("/search/suggest")
+    public ResponseEntity<List<FileResponse>> suggestFiles(
+            @AuthenticationPrincipal User user,
+            @RequestParam("prefix") String prefix,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(fileSearchService.suggest(user, prefix, limit));
     }
 
     // Register a cloud file for the authenticated user
@@ -137,32 +239,45 @@ public class FileController {
 
     // Public download endpoint (no authentication required)
     @GetMapping("/{id}/public-download")
-    public org.springframework.http.ResponseEntity<?> publicDownloadFile(@PathVariable Long id) throws java.io.IOException {
-        // Use a new method in FileService that does not require a user
-        var file = fileService.getFileById(id);
+    public void publicDownloadFile(
+            @PathVariable Long id,
+            HttpServletRequest request,
+            HttpServletResponse response) throws java.io.IOException {
+        File file = fileService.getFileById(id);
         if (file == null) {
-            return org.springframework.http.ResponseEntity.notFound().build();
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
         if (file.getUrl() != null && !file.getUrl().isEmpty()) {
             // Redirect to cloud URL
-            return org.springframework.http.ResponseEntity.status(302)
-                .header("Location", file.getUrl())
-                .build();
+            response.sendRedirect(file.getUrl());
         } else {
-            // Serve local file bytes
-            byte[] data = fileService.downloadFile(id);
-            return org.springframework.http.ResponseEntity.ok()
-                .header("Content-Disposition", "attachment; filename=\"" + file.getName() + "\"")
-                .body(data);
+            // Serve stored file contents, streamed from its storage backend
+            downloadService.serveStoredFile(file, request, response);
         }
     }
 
+    // Queue a compression job; poll GET /compress/jobs/{jobId} for progress and the resulting file
     @PostMapping("/{id}/compress")
-    public ResponseEntity<CompressionResponse> compressFile(
+    public ResponseEntity<CompressionJobResponse> compressFile(
             @AuthenticationPrincipal User user,
             @PathVariable Long id,
             @RequestBody CompressionRequest request) {
-        CompressionResponse response = fileService.compressFile(user, id, request);
-        return ResponseEntity.ok(response);
+        CompressionJobResponse job = compressionJobService.enqueue(user, id, request);
+        return ResponseEntity.accepted().body(job);
+    }
+
+    @GetMapping("/compress/jobs/{jobId}")
+    public ResponseEntity<CompressionJobResponse> getCompressionJob(
+            @AuthenticationPrincipal User user,
+            @PathVariable String jobId) {
+        return ResponseEntity.ok(compressionJobService.getJob(user, jobId));
+    }
+
+    @DeleteMapping("/compress/jobs/{jobId}")
+    public ResponseEntity<CompressionJobResponse> cancelCompressionJob(
+            @AuthenticationPrincipal User user,
+            @PathVariable String jobId) {
+        return ResponseEntity.ok(compressionJobService.cancel(user, jobId));
     }
 } 
\ No newline at end of file
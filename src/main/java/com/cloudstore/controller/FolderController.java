@@ -2,6 +2,9 @@ package com.cloudstore.controller;
 
 import com.cloudstore.dto.CreateFolderRequest;
 import com.cloudstore.dto.FolderResponse;
+import com.cloudstore.dto.FolderSizeResponse;
+import com.cloudstore.dto.MoveFolderRequest;
+import com.cloudstore.dto.FolderTreeNode;
 import com.cloudstore.service.FolderService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
@@ -27,6 +30,13 @@ public class FolderController {
         return ResponseEntity.ok(folderService.listFolders(Optional.ofNullable(parentId)));
     }
 
+    // Nested folder hierarchy (below rootId, or from the top level) with file counts and sizes, in one request
+    @GetMapping("/tree")
+    public ResponseEntity<List<FolderTreeNode>> getFolderTree(@RequestParam(required = false) Long rootId,
+                                                              @RequestParam(required = false) Integer maxDepth) {
+        return ResponseEntity.ok(folderService.getFolderTree(Optional.ofNullable(rootId), Optional.ofNullable(maxDepth)));
+    }
+
     @PostMapping
     public ResponseEntity<FolderResponse> createFolder(@RequestBody CreateFolderRequest request) {
         return ResponseEntity.ok(folderService.createFolder(request));
@@ -38,10 +48,35 @@ public class FolderController {
         return ResponseEntity.ok(folderService.renameFolder(id, request.getName()));
     }
 
+    // Move a folder and its contents under another folder (parentId null moves it to the top level)
+    @PostMapping("/{id}/move")
+    public ResponseEntity<FolderResponse> moveFolder(@PathVariable Long id, @RequestBody MoveFolderRequest request) {
+        return ResponseEntity.ok(folderService.moveFolder(id, request.getParentId()));
+    }
+
+    // Ancestors from the top level down to this folder, for breadcrumbs
+    @GetMapping("/{id}/breadcrumbs")
+    public ResponseEntity<List<FolderResponse>> getBreadcrumbs(@PathVariable Long id) {
+        return ResponseEntity.ok(folderService.getBreadcrumbs(id));
+    }
+
+    // Every folder below this one, flat
+    @GetMapping("/{id}/descendants")
+    public ResponseEntity<List<FolderResponse>> listDescendants(@PathVariable Long id) {
+        return ResponseEntity.ok(folderService.listDescendants(id));
+    }
+
+    // File count and total size of the folder including all subfolders
+    @GetMapping("/{id}/size")
+    public ResponseEntity<FolderSizeResponse> getSubtreeSize(@PathVariable Long id) {
+        return ResponseEntity.ok(folderService.getSubtreeSize(id));
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteFolder(@PathVariable Long id) {
         folderService.deleteFolder(id);
-        return ResponseEntity.ok().build();
+        // The subtree is gone from listings now; its rows and bytes are purged in the background
+        return ResponseEntity.accepted().build();
     }
 
     @GetMapping("/debug/all")
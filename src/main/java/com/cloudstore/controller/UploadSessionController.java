@@ -0,0 +1,68 @@
+package com.cloudstore.controller;
+
+import com.cloudstore.dto.CreateUploadSessionRequest;
+import com.cloudstore.dto.FileResponse;
+import com.cloudstore.dto.UploadSessionResponse;
+import com.cloudstore.model.User;
+import com.cloudstore.service.UploadSessionService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/files/uploads")
+@RequiredArgsConstructor
+public class UploadSessionController {
+    private final UploadSessionService uploadSessionService;
+
+    // Start a resumable upload for a file of known size
+    @PostMapping("")
+    public ResponseEntity<UploadSessionResponse> createSession(
+            @AuthenticationPrincipal User user,
+            @RequestBody CreateUploadSessionRequest request) throws IOException {
+        return ResponseEntity.ok(uploadSessionService.createSession(user, request));
+    }
+
+    // Query which byte ranges have been received so far
+    @GetMapping("/{id}")
+    public ResponseEntity<UploadSessionResponse> getSession(
+            @AuthenticationPrincipal User user,
+            @PathVariable String id) {
+        return ResponseEntity.ok(uploadSessionService.getSession(user, id));
+    }
+
+    // Upload one chunk as the raw request body; chunks may arrive in any order and in parallel
+    @PutMapping("/{id}")
+    public ResponseEntity<UploadSessionResponse> uploadChunk(
+            @AuthenticationPrincipal User user,
+            @PathVariable String id,
+            @RequestParam("offset") long offset,
+            HttpServletRequest request) throws IOException {
+        long length = request.getContentLengthLong();
+        if (length < 0) {
+            throw new RuntimeException("Content-Length is required for chunk uploads");
+        }
+        return ResponseEntity.ok(uploadSessionService.writeChunk(user, id, offset, length, request.getInputStream()));
+    }
+
+    // Finish the upload once every byte has been received
+    @PostMapping("/{id}/commit")
+    public ResponseEntity<FileResponse> commit(
+            @AuthenticationPrincipal User user,
+            @PathVariable String id) throws IOException {
+        return ResponseEntity.ok(uploadSessionService.commit(user, id));
+    }
+
+    // Abandon the upload and discard received chunks
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> abort(
+            @AuthenticationPrincipal User user,
+            @PathVariable String id) throws IOException {
+        uploadSessionService.abort(user, id);
+        return ResponseEntity.ok().build();
+    }
+}
@@ -1,10 +1,13 @@
 package com.cloudstore.controller;
 
 import com.cloudstore.dto.UpdateUserProfileRequest;
+import com.cloudstore.dto.UsageResponse;
 import com.cloudstore.dto.UserProfileResponse;
+import com.cloudstore.service.UsageService;
 import com.cloudstore.service.UserService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.security.core.context.SecurityContextHolder;
 import com.cloudstore.model.User;
@@ -17,12 +20,19 @@ import org.springframework.http.HttpStatus;
 @RequiredArgsConstructor
 public class UserController {
     private final UserService userService;
+    private final UsageService usageService;
 
     @GetMapping("/me")
     public ResponseEntity<UserProfileResponse> getProfile() {
         return ResponseEntity.ok(userService.getCurrentUser());
     }
 
+    // Storage used, trash and quota, read from the usage counters
+    @GetMapping("/me/usage")
+    public ResponseEntity<UsageResponse> getUsage(@AuthenticationPrincipal User user) {
+        return ResponseEntity.ok(usageService.getUsage(user));
+    }
+
     @PutMapping("/me")
     public ResponseEntity<UserProfileResponse> updateProfile(@RequestBody UpdateUserProfileRequest request) {
         return ResponseEntity.ok(userService.updateProfile(request));
@@ -0,0 +1,13 @@
+package com.cloudstore.dto;
+
+import lombok.Data;
+import java.util.List;
+
+@Data
+public class BatchFileRequest {
+    public enum Operation { DELETE, RESTORE, FAVOURITE, UNFAVOURITE, MOVE, PERMANENT_DELETE }
+
+    private Operation operation;
+    private List<Long> ids;
+    private Long folderId; // MOVE only; null moves the files to the root
+}
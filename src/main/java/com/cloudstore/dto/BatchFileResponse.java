@@ -0,0 +1,23 @@
+package com.cloudstore.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import java.util.List;
+
+@Data
+@Builder
+public class BatchFileResponse {
+    private String operation;
+    private int succeeded;
+    private int unchanged;
+    private int failed;
+    private List<Result> results; // one per requested id, in request order
+
+    @Data
+    @AllArgsConstructor
+    public static class Result {
+        private Long id;
+        private String status; // OK, UNCHANGED or NOT_FOUND
+    }
+}
@@ -0,0 +1,22 @@
+package com.cloudstore.dto;
+
+import lombok.Builder;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+public class CompressionJobResponse {
+    private String id;
+    private Long fileId;
+    private String type;
+    private String status; // QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+    private Double progress; // 0.0 - 1.0
+    private String error;
+    private Long resultFileId;
+    private Long compressedSize;
+    private Double compressionRatio;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
@@ -6,6 +6,8 @@ import lombok.Data;
 public class CompressionRequest {
     private String type; // image, video, archive
     private Float quality; // for images (0.3–0.9)
-    private Integer bitrate; // for videos (kbps)
+    private Integer bitrate; // for videos (kbps); with crf it caps the peak rate
+    private Integer crf; // for videos, constant quality (lower is better; x264 default 23)
+    private String resolution; // for videos, max height: 2160p, 1440p, 1080p, 720p, 480p, 360p
     private String format; // output format (jpg, png, mp4, zip, etc.)
 } 
\ No newline at end of file
@@ -0,0 +1,10 @@
+package com.cloudstore.dto;
+
+import lombok.Data;
+
+@Data
+public class CreateUploadSessionRequest {
+    private String fileName;
+    private Long size;
+    private Long folderId;
+}
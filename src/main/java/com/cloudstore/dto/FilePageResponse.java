@@ -0,0 +1,12 @@
+package com.cloudstore.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class FilePageResponse {
+    private List<FileResponse> items;
+    private String nextCursor; // null on the last page
+}
@@ -19,4 +19,11 @@ public class FileResponse {
     private LocalDateTime updatedAt;
     private String url;
     private boolean isCompressed;
+
+    // Used by JPQL constructor expressions, which cannot compute isCompressed themselves
+    public FileResponse(Long id, String name, Long size, boolean favourite, boolean deleted, Long folderId,
+                        LocalDateTime createdAt, LocalDateTime updatedAt, String url) {
+        this(id, name, size, favourite, deleted, folderId, createdAt, updatedAt, url,
+                name != null && name.contains("_compressed"));
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,11 @@
+package com.cloudstore.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class FolderSizeResponse {
+    private Long fileCount; // non-deleted files in the folder and all of its descendants
+    private Long totalSize;
+}
@@ -0,0 +1,20 @@
+package com.cloudstore.dto;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class FolderTreeNode {
+    private Long id;
+    private String name;
+    private Long parentId;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private long fileCount; // files directly in this folder (not deleted)
+    private long totalSize; // bytes of those files
+    private long subtreeFileCount; // including every returned descendant
+    private long subtreeSize;
+    private List<FolderTreeNode> children = new ArrayList<>();
+}
@@ -0,0 +1,21 @@
+package com.cloudstore.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import java.util.List;
+
+@Data
+@Builder
+public class UploadFilesResponse {
+    private List<FileResponse> files; // uploaded files, in request order
+    private List<Failure> failures; // files that could not be stored; empty when all succeeded
+
+    @Data
+    @AllArgsConstructor
+    public static class Failure {
+        private int index; // position in the request's files parameter
+        private String fileName;
+        private String error;
+    }
+}
@@ -0,0 +1,24 @@
+package com.cloudstore.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class UploadSessionResponse {
+    private String id;
+    private String fileName;
+    private Long size;
+    private Long receivedBytes;
+    private List<ReceivedRange> receivedRanges;
+    private LocalDateTime expiresAt;
+
+    @Data
+    @AllArgsConstructor
+    public static class ReceivedRange {
+        private Long start;
+        private Long end; // exclusive
+    }
+}
@@ -0,0 +1,15 @@
+package com.cloudstore.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class UsageResponse {
+    private long fileCount;
+    private long usedBytes; // files not in the trash
+    private long trashFileCount;
+    private long trashBytes;
+    private Long quotaBytes; // null when the user has no quota
+    private Long availableBytes;
+}
@@ -0,0 +1,38 @@
+package com.cloudstore.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "blobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Blob {
+    @Id
+    @Column(length = 64)
+    private String hash; // hex SHA-256 of the content
+
+    @Column(nullable = false)
+    private Long size;
+
+    @Column(nullable = false)
+    private String path; // informational location (<backend>:<hash>, or the file path for older blobs); reads go through the backend
+
+    @Column(length = 32)
+    private String storageBackend; // StorageBackend name; null for blobs written before backends existed (local)
+
+    @Column(nullable = false)
+    private Long refCount; // number of File rows pointing at this blob
+
+    private LocalDateTime missingAt; // set by the storage scanner while the bytes are missing from the backend
+
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,65 @@
+package com.cloudstore.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "compression_jobs", indexes = {
+        @Index(name = "idx_compression_jobs_status_type_created", columnList = "status, type, created_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CompressionJob {
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED }
+
+    @Id
+    private String id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id")
+    private User user;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "file_id")
+    private File file;
+
+    @Column(nullable = false)
+    private String type; // image, video, archive
+
+    private Float quality;
+    private Integer bitrate;
+    private Integer crf;
+    private String resolution;
+    private String format;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status;
+
+    private Double progress; // 0.0 - 1.0
+
+    @Column(length = 1000)
+    private String error;
+
+    private Long resultFileId;
+    private Long compressedSize;
+    private Double compressionRatio;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt; // doubles as the worker heartbeat while RUNNING
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = updatedAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,44 @@
+package com.cloudstore.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDateTime;
+
+// A rendition generated from a file (thumbnail or preview); its bytes are a blob in the blob store
+@Entity
+@Table(name = "derived_assets", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_derived_assets_file_variant", columnNames = {"file_id", "variant"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DerivedAsset {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "file_id", nullable = false)
+    private File file;
+
+    @Column(nullable = false, length = 32)
+    private String variant; // <size>.<format>, e.g. medium.webp
+
+    private Integer width;
+    private Integer height;
+    private Long size;
+
+    @Column(nullable = false, length = 64)
+    private String contentHash;
+
+    @Column(length = 32)
+    private String storageBackend;
+
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
@@ -5,7 +5,14 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "files")
+@Table(name = "files", indexes = {
+        @Index(name = "idx_files_content_hash", columnList = "content_hash"),
+        @Index(name = "idx_files_user_deleted_created", columnList = "user_id, deleted, created_at, id"),
+        @Index(name = "idx_files_user_deleted_name", columnList = "user_id, deleted, name, id"),
+        @Index(name = "idx_files_folder_deleted_created", columnList = "folder_id, deleted, created_at, id"),
+        @Index(name = "idx_files_folder_deleted_name", columnList = "folder_id, deleted, name, id"),
+        @Index(name = "idx_files_deleted_deleted_at", columnList = "deleted, deleted_at")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -28,9 +35,17 @@ public class File {
     @Column(nullable = true)
     private String url; // Cloudinary or external URL
 
+    @Column(length = 64)
+    private String contentHash; // SHA-256 of the blob backing a locally stored file
+
+    @Column(length = 32)
+    private String storageBackend; // copied from the blob, so reads need no join; null means local
+
     private Long size;
     private boolean favourite = false;
     private boolean deleted = false;
+    private LocalDateTime deletedAt; // when the file went to the trash; the trash reaper purges it after trash.retention
+    private LocalDateTime missingAt; // set by the storage scanner while a path-stored file is missing from disk
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "folder_id")
@@ -4,8 +4,12 @@ import jakarta.persistence.*;
 import lombok.*;
 import java.time.LocalDateTime;
 
+// idx_folders_user_path needs varchar_pattern_ops, which @Index can't express; FolderService creates it
 @Entity
-@Table(name = "folders")
+@Table(name = "folders", indexes = {
+        @Index(name = "idx_folders_parent_id", columnList = "parent_id"),
+        @Index(name = "idx_folders_deleted_depth", columnList = "deleted, depth")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -26,6 +30,19 @@ public class Folder {
     @JoinColumn(name = "parent_id")
     private Folder parent;
 
+    // Materialized path of ids from the top level down, e.g. /3/17/42/; ids never change, so renames
+    // leave it alone and only moves rewrite the subtree's prefix
+    @Column(length = 2048)
+    private String path;
+
+    private Integer depth; // 0 for top-level folders
+
+    // Set on the whole subtree when a folder is deleted; the rows and their files are purged in the background
+    @Column(nullable = false, columnDefinition = "boolean not null default false")
+    private boolean deleted;
+
+    private LocalDateTime deletedAt;
+
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
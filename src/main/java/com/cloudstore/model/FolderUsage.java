@@ -0,0 +1,20 @@
+package com.cloudstore.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+// Counters for the non-deleted files directly inside one folder
+@Entity
+@Table(name = "folder_usage")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class FolderUsage {
+    @Id
+    private Long folderId;
+
+    private Long userId;
+    private long fileCount;
+    private long totalBytes;
+}
@@ -0,0 +1,24 @@
+package com.cloudstore.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDateTime;
+
+// Where the storage consistency scanner stopped in each of its scans, so the next run resumes there
+@Entity
+@Table(name = "storage_scan_checkpoints")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StorageScanCheckpoint {
+    @Id
+    @Column(length = 64)
+    private String scope; // "blobs:<backend>" or "files"
+
+    @Column(length = 64)
+    private String position; // last shard or file id completed; null at the start of a pass
+
+    private LocalDateTime passStartedAt;
+    private LocalDateTime updatedAt;
+}
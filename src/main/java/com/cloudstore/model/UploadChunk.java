@@ -0,0 +1,34 @@
+package com.cloudstore.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "upload_chunks", indexes = @Index(name = "idx_upload_chunks_session_id", columnList = "session_id"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UploadChunk {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "session_id")
+    private UploadSession session;
+
+    @Column(nullable = false)
+    private Long startOffset;
+
+    @Column(nullable = false)
+    private Long endOffset; // exclusive
+
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
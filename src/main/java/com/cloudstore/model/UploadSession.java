@@ -0,0 +1,51 @@
+package com.cloudstore.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "upload_sessions", indexes = @Index(name = "idx_upload_sessions_expires_at", columnList = "expires_at"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UploadSession {
+    @Id
+    private String id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id")
+    private User user;
+
+    @Column(nullable = false)
+    private String fileName;
+
+    @Column(nullable = false)
+    private Long totalSize;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "folder_id")
+    private Folder folder;
+
+    @Column(nullable = false)
+    private String tempPath; // pre-allocated sparse file the chunks are written into
+
+    // Set while a commit hashes and stores the file, so a second commit is refused
+    @Column(nullable = false, columnDefinition = "boolean not null default false")
+    private boolean committing;
+
+    private LocalDateTime expiresAt;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = updatedAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -28,6 +28,8 @@ public class User {
     private String emailVerificationCode;
     private LocalDateTime emailVerificationExpiry;
 
+    private Long storageQuota; // bytes; null falls back to usage.quota.default
+
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
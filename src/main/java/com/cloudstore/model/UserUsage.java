@@ -0,0 +1,24 @@
+package com.cloudstore.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDateTime;
+
+// Per-user storage counters, kept in step with every file change and reconciled against files periodically
+@Entity
+@Table(name = "user_usage")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UserUsage {
+    @Id
+    private Long userId;
+
+    private long fileCount; // files not in the trash
+    private long totalBytes;
+    private long trashFileCount;
+    private long trashBytes;
+
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,66 @@
+package com.cloudstore.repository;
+
+import com.cloudstore.model.Blob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface BlobRepository extends JpaRepository<Blob, String> {
+
+    // Registers a new blob or takes another reference on an existing one in a single statement,
+    // so concurrent uploads of identical content never race on the primary key
+    @Modifying
+    @Query(value = "INSERT INTO blobs (hash, size, path, storage_backend, ref_count, created_at) "
+            + "VALUES (:hash, :size, :path, :backend, 1, now()) "
+            + "ON CONFLICT (hash) DO UPDATE SET ref_count = blobs.ref_count + 1", nativeQuery = true)
+    int acquire(@Param("hash") String hash, @Param("size") long size, @Param("path") String path,
+                @Param("backend") String backend);
+
+    // Row with no references that holds off acquire() while a released blob's bytes are deleted;
+    // inserts nothing (0) when the hash has been stored again
+    @Modifying
+    @Query(value = "INSERT INTO blobs (hash, size, path, storage_backend, ref_count, created_at) "
+            + "VALUES (:hash, :size, :path, :backend, 0, now()) "
+            + "ON CONFLICT (hash) DO NOTHING", nativeQuery = true)
+    int insertPlaceholder(@Param("hash") String hash, @Param("size") long size, @Param("path") String path,
+                          @Param("backend") String backend);
+
+    @Modifying
+    @Query("update Blob b set b.refCount = b.refCount + 1 where b.hash = :hash")
+    int incrementRefCount(@Param("hash") String hash);
+
+    @Modifying
+    @Query("update Blob b set b.refCount = b.refCount - 1 where b.hash = :hash and b.refCount > 0")
+    int decrementRefCount(@Param("hash") String hash);
+
+    @Modifying
+    @Query("delete from Blob b where b.hash = :hash and b.refCount <= 0")
+    int deleteIfUnreferenced(@Param("hash") String hash);
+
+    // Keyset page of one backend's blobs inside a hash range, for the storage consistency scanner
+    @Query(value = "SELECT hash AS \"hash\", missing_at AS \"missingAt\" FROM blobs "
+            + "WHERE hash > :after AND hash < :before AND COALESCE(storage_backend, 'local') = :backend "
+            + "ORDER BY hash LIMIT :limit", nativeQuery = true)
+    List<BlobScanRow> findScanPage(@Param("backend") String backend, @Param("after") String after,
+                                   @Param("before") String before, @Param("limit") int limit);
+
+    @Query(value = "SELECT EXISTS (SELECT 1 FROM blobs WHERE hash = :hash "
+            + "AND COALESCE(storage_backend, 'local') = :backend)", nativeQuery = true)
+    boolean isStoredIn(@Param("hash") String hash, @Param("backend") String backend);
+
+    // The scanner runs outside any service transaction
+    @Transactional
+    @Modifying
+    @Query("update Blob b set b.missingAt = :now where b.hash in :hashes and b.missingAt is null")
+    int markMissing(@Param("hashes") Collection<String> hashes, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update Blob b set b.missingAt = null where b.hash in :hashes")
+    int clearMissing(@Param("hashes") Collection<String> hashes);
+}
@@ -0,0 +1,9 @@
+package com.cloudstore.repository;
+
+import java.time.LocalDateTime;
+
+// A blob as seen by the storage consistency scanner
+public interface BlobScanRow {
+    String getHash();
+    LocalDateTime getMissingAt();
+}
@@ -0,0 +1,94 @@
+package com.cloudstore.repository;
+
+import com.cloudstore.model.CompressionJob;
+import com.cloudstore.model.CompressionJob.Status;
+import com.cloudstore.model.File;
+import com.cloudstore.model.User;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+// The modifying queries are called from worker threads outside any service transaction,
+// so each one runs in its own transaction
+public interface CompressionJobRepository extends JpaRepository<CompressionJob, String> {
+    Optional<CompressionJob> findByIdAndUser(String id, User user);
+
+    @Query("select j from CompressionJob j join fetch j.user join fetch j.file where j.id = :id")
+    Optional<CompressionJob> findWithUserAndFile(@Param("id") String id);
+
+    @Query("select j.id from CompressionJob j where j.status = :status and j.type = :type order by j.createdAt")
+    List<String> findIdsByStatusAndType(@Param("status") Status status, @Param("type") String type, Pageable pageable);
+
+    // Compare-and-set on the status column; only the caller that sees 1 owns the transition
+    @Transactional
+    @Modifying
+    @Query("update CompressionJob j set j.status = :to, j.updatedAt = :now where j.id = :id and j.status = :from")
+    int transition(@Param("id") String id, @Param("from") Status from, @Param("to") Status to, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update CompressionJob j set j.status = :running, j.startedAt = :now, j.updatedAt = :now, j.progress = 0.0 "
+            + "where j.id = :id and j.status = :queued")
+    int claim(@Param("id") String id, @Param("queued") Status queued, @Param("running") Status running, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update CompressionJob j set j.progress = :progress, j.updatedAt = :now where j.id = :id and j.status = :running")
+    int updateProgress(@Param("id") String id, @Param("progress") double progress, @Param("running") Status running, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update CompressionJob j set j.status = :completed, j.progress = 1.0, j.resultFileId = :resultFileId, "
+            + "j.compressedSize = :compressedSize, j.compressionRatio = :ratio, j.finishedAt = :now, j.updatedAt = :now "
+            + "where j.id = :id and j.status = :running and j.startedAt = :startedAt")
+    int complete(@Param("id") String id, @Param("resultFileId") Long resultFileId, @Param("compressedSize") Long compressedSize,
+                 @Param("ratio") Double ratio, @Param("startedAt") LocalDateTime startedAt, @Param("running") Status running,
+                 @Param("completed") Status completed, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update CompressionJob j set j.status = :failed, j.error = :error, j.finishedAt = :now, j.updatedAt = :now "
+            + "where j.id = :id and j.status = :running")
+    int fail(@Param("id") String id, @Param("error") String error, @Param("running") Status running, @Param("failed") Status failed,
+             @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update CompressionJob j set j.status = :cancelled, j.finishedAt = :now, j.updatedAt = :now "
+            + "where j.id = :id and j.status in :active")
+    int cancel(@Param("id") String id, @Param("active") Collection<Status> active, @Param("cancelled") Status cancelled,
+               @Param("now") LocalDateTime now);
+
+    // Heartbeat for jobs this node is working on, so recovery can tell them from orphans
+    @Transactional
+    @Modifying
+    @Query("update CompressionJob j set j.updatedAt = :now where j.id in :ids and j.status = :running")
+    int touch(@Param("ids") Collection<String> ids, @Param("running") Status running, @Param("now") LocalDateTime now);
+
+    // Of the jobs this node is working on, those still RUNNING; the rest were cancelled, requeued or deleted elsewhere
+    @Query("select j.id from CompressionJob j where j.id in :ids and j.status = :running")
+    List<String> findIdsStillRunning(@Param("ids") Collection<String> ids, @Param("running") Status running);
+
+    // Job history goes with the source file; a job still running on it then finishes as a no-op
+    @Modifying
+    @Query("delete from CompressionJob j where j.file = :file")
+    int deleteAllByFile(@Param("file") File file);
+
+    @Modifying
+    @Query("delete from CompressionJob j where j.file.id in :fileIds")
+    int deleteAllByFileIds(@Param("fileIds") Collection<Long> fileIds);
+
+    @Transactional
+    @Modifying
+    @Query("update CompressionJob j set j.status = :queued, j.progress = 0.0, j.startedAt = null, j.updatedAt = :now "
+            + "where j.status = :running and j.updatedAt < :cutoff")
+    int requeueStale(@Param("running") Status running, @Param("queued") Status queued, @Param("cutoff") LocalDateTime cutoff,
+                     @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,23 @@
+package com.cloudstore.repository;
+
+import com.cloudstore.model.DerivedAsset;
+import com.cloudstore.model.File;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface DerivedAssetRepository extends JpaRepository<DerivedAsset, Long> {
+    Optional<DerivedAsset> findByFileAndVariant(File file, String variant);
+    List<DerivedAsset> findAllByFile(File file);
+
+    @Query("select a.contentHash from DerivedAsset a where a.file.id in :fileIds")
+    List<String> findContentHashesByFileIds(@Param("fileIds") Collection<Long> fileIds);
+
+    @Modifying
+    @Query("delete from DerivedAsset a where a.file.id in :fileIds")
+    int deleteAllByFileIds(@Param("fileIds") Collection<Long> fileIds);
+}
@@ -0,0 +1,25 @@
+package com.cloudstore.repository;
+
+import com.cloudstore.model.User;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Parameters for a keyset-paginated file listing. The cursor is the sort value and id of the
+ * last row of the previous page; rows strictly after it in sort order are returned.
+ */
+@Data
+@Builder
+public class FileListQuery {
+    public static final String SORT_CREATED_AT = "createdAt";
+    public static final String SORT_NAME = "name";
+
+    private User user;
+    private Long folderId;
+    private boolean deleted;
+    private String sort;
+    private boolean ascending;
+    private Object cursorValue;
+    private Long cursorId;
+    private int limit;
+}
@@ -1,16 +1,158 @@
 package com.cloudstore.repository;
 
+import com.cloudstore.dto.FileResponse;
 import com.cloudstore.model.File;
 import com.cloudstore.model.User;
 import com.cloudstore.model.Folder;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
-public interface FileRepository extends JpaRepository<File, Long> {
-    List<File> findAllByUser(User user);
-    List<File> findAllByFolder(Folder folder);
+public interface FileRepository extends JpaRepository<File, Long>, FileRepositoryCustom {
+    // Projects straight into FileResponse; the folder id comes from the join, never from a lazy proxy
+    String RESPONSE_SELECT = "select new com.cloudstore.dto.FileResponse(f.id, f.name, f.size, f.favourite, f.deleted, "
+            + "fo.id, f.createdAt, f.updatedAt, f.url) from File f left join f.folder fo ";
+    String RESPONSE_COLUMNS = "f.id AS \"id\", f.name AS \"name\", f.size AS \"size\", f.favourite AS \"favourite\", "
+            + "f.deleted AS \"deleted\", f.folder_id AS \"folderId\", f.created_at AS \"createdAt\", "
+            + "f.updated_at AS \"updatedAt\", f.url AS \"url\" ";
+
     List<File> findAllByUserAndDeletedTrue(User user);
     List<File> findAllByFolderAndDeletedTrue(Folder folder);
     Optional<File> findByIdAndUser(Long id, User user);
-} 
\ No newline at end of file
+
+    // Ranked name search: substring/fuzzy matches use the pg_trgm index, word matches the tsvector index
+    @Query(value = "SELECT " + RESPONSE_COLUMNS + "FROM files f WHERE f.user_id = :userId AND f.deleted = false "
+            + "AND (lower(f.name) LIKE :pattern ESCAPE '\\' OR lower(f.name) % :query "
+            + "OR to_tsvector('simple', f.name) @@ plainto_tsquery('simple', :query)) "
+            + "ORDER BY (lower(f.name) LIKE :prefix ESCAPE '\\') DESC, similarity(lower(f.name), :query) DESC, f.id DESC "
+            + "LIMIT :limit OFFSET :offset", nativeQuery = true)
+    List<FileResponseView> searchByName(@Param("userId") Long userId, @Param("query") String query,
+                            @Param("pattern") String pattern, @Param("prefix") String prefix,
+                            @Param("limit") int limit, @Param("offset") int offset);
+
+    @Query(RESPONSE_SELECT + "where f.user = :user and f.deleted = false and lower(f.name) like :pattern escape '\\' order by f.name, f.id")
+    List<FileResponse> searchByNameLike(@Param("user") User user, @Param("pattern") String pattern, Pageable pageable);
+
+    @Query("select f.id, f.name from File f where f.user.id = :userId and f.deleted = false")
+    List<Object[]> findNamesByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    @Query(RESPONSE_SELECT + "where f.user = :user and f.id in :ids and f.deleted = false")
+    List<FileResponse> findResponsesByIds(@Param("user") User user, @Param("ids") Collection<Long> ids);
+
+    // Files of deleted folders are being purged, not in the trash
+    @Query(RESPONSE_SELECT + "where f.user = :user and f.deleted = true and (fo is null or fo.deleted = false) "
+            + "order by f.updatedAt desc, f.id desc")
+    List<FileResponse> findDeletedResponses(@Param("user") User user);
+
+    @Query(RESPONSE_SELECT + "where f.user = :user and fo.id = :folderId and f.deleted = true and fo.deleted = false "
+            + "order by f.updatedAt desc, f.id desc")
+    List<FileResponse> findDeletedResponsesInFolder(@Param("user") User user, @Param("folderId") Long folderId);
+
+    // Set-based batch operations: ownership is part of every statement, so ids belonging to other
+    // users are never touched and come back as not found
+    @Query("select f.id from File f where f.user = :user and f.id in :ids")
+    List<Long> findOwnedIds(@Param("user") User user, @Param("ids") Collection<Long> ids);
+
+    // The owned files not already in the wanted trash state, locked so a concurrent batch can't count them too
+    @Query(value = "SELECT f.id FROM files f WHERE f.user_id = :userId AND f.id IN (:ids) AND f.deleted <> :deleted "
+            + "ORDER BY f.id FOR UPDATE", nativeQuery = true)
+    List<Long> lockToChangeDeleted(@Param("userId") Long userId, @Param("ids") Collection<Long> ids,
+                                   @Param("deleted") boolean deleted);
+
+    // Files already in that state are skipped, so a second delete keeps the original deletedAt
+    @Modifying
+    @Query("update File f set f.deleted = :deleted, f.deletedAt = :deletedAt, f.updatedAt = :now "
+            + "where f.user = :user and f.id in :ids and f.deleted <> :deleted")
+    int setDeleted(@Param("user") User user, @Param("ids") Collection<Long> ids, @Param("deleted") boolean deleted,
+                   @Param("deletedAt") LocalDateTime deletedAt, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("update File f set f.favourite = :favourite, f.updatedAt = :now where f.user = :user and f.id in :ids")
+    int setFavourite(@Param("user") User user, @Param("ids") Collection<Long> ids, @Param("favourite") boolean favourite,
+                     @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("update File f set f.folder = :folder, f.updatedAt = :now where f.user = :user and f.id in :ids")
+    int moveToFolder(@Param("user") User user, @Param("ids") Collection<Long> ids, @Param("folder") Folder folder,
+                     @Param("now") LocalDateTime now);
+
+    // Hides the files of a deleted folder subtree until the background purge removes them
+    @Modifying
+    @Query("update File f set f.deleted = true, f.deletedAt = :now, f.updatedAt = :now where f.folder.id in "
+            + "(select fo.id from Folder fo where fo.user = :user and fo.path like concat(:prefix, '%'))")
+    int markDeletedInSubtree(@Param("user") User user, @Param("prefix") String prefix, @Param("now") LocalDateTime now);
+
+    // Unlike the statements above these take ids that were already checked or locked by the caller
+    @Query("select f.contentHash from File f where f.id in :ids and f.contentHash is not null")
+    List<String> findContentHashesByIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("delete from File f where f.id in :ids")
+    int deleteAllByIds(@Param("ids") Collection<Long> ids);
+
+    // Only files that are in the trash themselves; live ones are moved out instead (see below)
+    @Query(value = "SELECT fi.id FROM files fi JOIN folders fo ON fo.id = fi.folder_id "
+            + "WHERE fo.deleted = true AND fi.deleted = true "
+            + "LIMIT :limit FOR UPDATE OF fi SKIP LOCKED", nativeQuery = true)
+    List<Long> lockFilesInDeletedFolders(@Param("limit") int limit);
+
+    // Live files left in a deleted folder, e.g. an upload that committed while the folder was being deleted
+    @Query(value = "SELECT fi.id FROM files fi JOIN folders fo ON fo.id = fi.folder_id "
+            + "WHERE fo.deleted = true AND fi.deleted = false "
+            + "LIMIT :limit FOR UPDATE OF fi SKIP LOCKED", nativeQuery = true)
+    List<Long> lockLiveFilesInDeletedFolders(@Param("limit") int limit);
+
+    @Modifying
+    @Query("update File f set f.folder = null, f.updatedAt = :now where f.id in :ids")
+    int moveToTopLevel(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    @Query("select f.id from File f join f.folder fo where f.id in :ids and fo.deleted = true")
+    List<Long> findIdsInDeletedFolders(@Param("ids") Collection<Long> ids);
+
+    // Oldest expired trash first; SKIP LOCKED lets every node reap without waiting on the others
+    @Query(value = "SELECT f.id FROM files f WHERE f.deleted = true AND f.deleted_at < :cutoff "
+            + "ORDER BY f.deleted_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> lockExpiredTrash(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+
+    // Trash from before deletedAt was recorded is dated by its last update
+    @Transactional
+    @Modifying
+    @Query("update File f set f.deletedAt = f.updatedAt where f.deleted = true and f.deletedAt is null")
+    int backfillDeletedAt();
+
+    // Keyset page of files stored at a plain path rather than in the blob store, for the storage consistency scanner
+    @Query(value = "SELECT id AS \"id\", path AS \"path\", missing_at AS \"missingAt\" FROM files "
+            + "WHERE id > :after AND content_hash IS NULL AND (url IS NULL OR url = '') AND path IS NOT NULL "
+            + "ORDER BY id LIMIT :limit", nativeQuery = true)
+    List<LegacyFileRow> findLegacyPage(@Param("after") long after, @Param("limit") int limit);
+
+    @Query("select f.path from File f where f.path in :paths")
+    List<String> findExistingPaths(@Param("paths") Collection<String> paths);
+
+    @Transactional
+    @Modifying
+    @Query("update File f set f.missingAt = :now where f.id in :ids and f.missingAt is null")
+    int markMissing(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update File f set f.missingAt = null where f.id in :ids")
+    int clearMissing(@Param("ids") Collection<Long> ids);
+
+    // Usage of a set of files grouped the way the usage counters are kept, taken before they change
+    String USAGE_SELECT = "select new com.cloudstore.repository.FileUsage(f.user.id, fo.id, f.deleted, count(f), "
+            + "coalesce(sum(f.size), 0L)) from File f left join f.folder fo ";
+
+    @Query(USAGE_SELECT + "where f.id in :ids group by f.user.id, fo.id, f.deleted")
+    List<FileUsage> summarize(@Param("ids") Collection<Long> ids);
+
+    @Query(USAGE_SELECT + "where f.user = :user and fo.path like concat(:prefix, '%') group by f.user.id, fo.id, f.deleted")
+    List<FileUsage> summarizeSubtree(@Param("user") User user, @Param("prefix") String prefix);
+}
@@ -0,0 +1,12 @@
+package com.cloudstore.repository;
+
+import com.cloudstore.dto.FileResponse;
+import com.cloudstore.model.File;
+import java.util.List;
+
+public interface FileRepositoryCustom {
+    List<FileResponse> findPage(FileListQuery query);
+
+    // Inserts new files with multi-row INSERT statements and assigns their generated ids
+    void insertAll(List<File> files);
+}
@@ -0,0 +1,124 @@
+package com.cloudstore.repository;
+
+import com.cloudstore.dto.FileResponse;
+import com.cloudstore.model.File;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import jakarta.persistence.Tuple;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class FileRepositoryCustomImpl implements FileRepositoryCustom {
+    private static final String INSERT_FILES = "INSERT INTO files (user_id, name, path, content_hash, storage_backend, "
+            + "size, favourite, deleted, folder_id, created_at, updated_at) VALUES ";
+    private static final String INSERT_ROW = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final int INSERT_ROWS_PER_STATEMENT = 500;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Seeks past the cursor instead of using OFFSET. The cursor test is a row-value comparison, which
+    // PostgreSQL turns into the start key of one index range scan on (user_id | folder_id, deleted,
+    // <sort column>, id), so every page costs the same however deep the client has paged.
+    @Override
+    public List<FileResponse> findPage(FileListQuery query) {
+        String column = FileListQuery.SORT_NAME.equals(query.getSort()) ? "f.name" : "f.created_at";
+        String direction = query.isAscending() ? "ASC" : "DESC";
+        String comparison = query.isAscending() ? ">" : "<";
+
+        StringBuilder sql = new StringBuilder("SELECT ").append(FileRepository.RESPONSE_COLUMNS)
+                .append("FROM files f WHERE f.user_id = :userId AND f.deleted = :deleted");
+        if (query.getFolderId() != null) {
+            sql.append(" AND f.folder_id = :folderId");
+        }
+        if (query.getCursorId() != null) {
+            sql.append(" AND (").append(column).append(", f.id) ").append(comparison).append(" (:cursorValue, :cursorId)");
+        }
+        sql.append(" ORDER BY ").append(column).append(' ').append(direction).append(", f.id ").append(direction)
+                .append(" LIMIT :limit");
+
+        Query nativeQuery = entityManager.createNativeQuery(sql.toString(), Tuple.class)
+                .setParameter("userId", query.getUser().getId())
+                .setParameter("deleted", query.isDeleted())
+                .setParameter("limit", query.getLimit());
+        if (query.getFolderId() != null) {
+            nativeQuery.setParameter("folderId", query.getFolderId());
+        }
+        if (query.getCursorId() != null) {
+            nativeQuery.setParameter("cursorValue", query.getCursorValue());
+            nativeQuery.setParameter("cursorId", query.getCursorId());
+        }
+        List<FileResponse> page = new ArrayList<>();
+        for (Object row : nativeQuery.getResultList()) {
+            Tuple tuple = (Tuple) row;
+            page.add(new FileResponse(
+                    tuple.get("id", Number.class).longValue(),
+                    tuple.get("name", String.class),
+                    tuple.get("size") != null ? tuple.get("size", Number.class).longValue() : null,
+                    Boolean.TRUE.equals(tuple.get("favourite")),
+                    Boolean.TRUE.equals(tuple.get("deleted")),
+                    tuple.get("folderId") != null ? tuple.get("folderId", Number.class).longValue() : null,
+                    toLocalDateTime(tuple.get("createdAt")),
+                    toLocalDateTime(tuple.get("updatedAt")),
+                    tuple.get("url", String.class)));
+        }
+        return page;
+    }
+
+    // Native timestamp columns come back as java.sql.Timestamp or LocalDateTime depending on the driver mapping
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
+        }
+        return (LocalDateTime) value;
+    }
+
+    // IDENTITY keys rule out Hibernate insert batching, so rows go out as one INSERT ... VALUES per
+    // chunk. PostgreSQL returns the RETURNING rows of a VALUES list in input order.
+    @Override
+    @Transactional
+    public void insertAll(List<File> files) {
+        LocalDateTime now = LocalDateTime.now();
+        for (int from = 0; from < files.size(); from += INSERT_ROWS_PER_STATEMENT) {
+            List<File> chunk = files.subList(from, Math.min(files.size(), from + INSERT_ROWS_PER_STATEMENT));
+            String sql = INSERT_FILES + String.join(", ", Collections.nCopies(chunk.size(), INSERT_ROW)) + " RETURNING id";
+            List<Long> ids = jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(sql);
+                int index = 1;
+                for (File file : chunk) {
+                    statement.setObject(index++, file.getUser() != null ? file.getUser().getId() : null, Types.BIGINT);
+                    statement.setString(index++, file.getName());
+                    statement.setString(index++, file.getPath());
+                    statement.setString(index++, file.getContentHash());
+                    statement.setString(index++, file.getStorageBackend());
+                    statement.setObject(index++, file.getSize(), Types.BIGINT);
+                    statement.setBoolean(index++, file.isFavourite());
+                    statement.setBoolean(index++, file.isDeleted());
+                    statement.setObject(index++, file.getFolder() != null ? file.getFolder().getId() : null, Types.BIGINT);
+                    statement.setTimestamp(index++, Timestamp.valueOf(now));
+                    statement.setTimestamp(index++, Timestamp.valueOf(now));
+                }
+                return statement;
+            }, (rs, row) -> rs.getLong(1));
+            for (int i = 0; i < chunk.size(); i++) {
+                File file = chunk.get(i);
+                file.setId(ids.get(i));
+                file.setCreatedAt(now);
+                file.setUpdatedAt(now);
+            }
+        }
+    }
+}
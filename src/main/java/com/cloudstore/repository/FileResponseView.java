@@ -0,0 +1,16 @@
+package com.cloudstore.repository;
+
+import java.time.LocalDateTime;
+
+// Row shape of native file queries; maps 1:1 onto FileResponse without hydrating File entities
+public interface FileResponseView {
+    Long getId();
+    String getName();
+    Long getSize();
+    Boolean getFavourite();
+    Boolean getDeleted();
+    Long getFolderId();
+    LocalDateTime getCreatedAt();
+    LocalDateTime getUpdatedAt();
+    String getUrl();
+}
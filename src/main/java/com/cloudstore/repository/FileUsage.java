@@ -0,0 +1,21 @@
+package com.cloudstore.repository;
+
+import com.cloudstore.model.File;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Files of one user, folder and trash state, with their total size; the unit usage counters move by
+@Data
+@AllArgsConstructor
+public class FileUsage {
+    private Long userId;
+    private Long folderId;
+    private Boolean deleted;
+    private Long fileCount;
+    private Long totalBytes;
+
+    public static FileUsage of(File file) {
+        return new FileUsage(file.getUser().getId(), file.getFolder() != null ? file.getFolder().getId() : null,
+                file.isDeleted(), 1L, file.getSize() != null ? file.getSize() : 0L);
+    }
+}
@@ -1,11 +1,115 @@
 package com.cloudstore.repository;
 
+import com.cloudstore.dto.FolderResponse;
+import com.cloudstore.dto.FolderSizeResponse;
 import com.cloudstore.model.Folder;
 import com.cloudstore.model.User;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface FolderRepository extends JpaRepository<Folder, Long> {
+    // Projects straight into FolderResponse; the parent id comes from the join, never from a lazy proxy
+    String RESPONSE_SELECT = "select new com.cloudstore.dto.FolderResponse(f.id, f.name, p.id, f.createdAt, f.updatedAt) "
+            + "from Folder f left join f.parent p ";
+
+    // Shared tail of the recursive tree queries below: attaches the per-folder usage counters to the
+    // walked folders, so file counts and sizes cost one primary-key join instead of a scan of files
+    String TREE_SELECT = "SELECT t.id AS \"id\", t.name AS \"name\", t.parent_id AS \"parentId\", t.depth AS \"depth\", "
+            + "t.created_at AS \"createdAt\", t.updated_at AS \"updatedAt\", "
+            + "COALESCE(u.file_count, 0) AS \"fileCount\", COALESCE(u.total_bytes, 0) AS \"totalSize\" FROM tree t "
+            + "LEFT JOIN folder_usage u ON u.folder_id = t.id ORDER BY t.depth, t.name, t.id";
+
     List<Folder> findAllByUser(User user);
     List<Folder> findAllByParent(Folder parent);
-} 
\ No newline at end of file
+    Optional<Folder> findByIdAndUser(Long id, User user);
+
+    @Query("select f.path from Folder f where f.id = :id and f.user = :user and f.deleted = false")
+    Optional<String> findActivePath(@Param("id") Long id, @Param("user") User user);
+
+    // Structural changes lock the folders they build on in this order (shallowest first), so a create
+    // and a move in the same subtree serialize on their common ancestor instead of deadlocking
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select f from Folder f where f.user = :user and f.id in :ids order by f.depth, f.id")
+    List<Folder> lockAllByIds(@Param("user") User user, @Param("ids") Collection<Long> ids);
+
+    // Walks the hierarchy down from the seed folders; depth is capped so a deep hierarchy cannot run away
+    @Query(value = "WITH RECURSIVE tree AS ("
+            + "SELECT f.id, f.name, f.parent_id, f.created_at, f.updated_at, 0 AS depth FROM folders f "
+            + "WHERE f.user_id = :userId AND f.parent_id IS NULL AND f.deleted = false "
+            + "UNION ALL "
+            + "SELECT c.id, c.name, c.parent_id, c.created_at, c.updated_at, t.depth + 1 FROM folders c "
+            + "JOIN tree t ON c.parent_id = t.id WHERE t.depth < :maxDepth AND c.deleted = false) " + TREE_SELECT, nativeQuery = true)
+    List<FolderTreeRow> findTree(@Param("userId") Long userId, @Param("maxDepth") int maxDepth);
+
+    @Query(value = "WITH RECURSIVE tree AS ("
+            + "SELECT f.id, f.name, f.parent_id, f.created_at, f.updated_at, 0 AS depth FROM folders f "
+            + "WHERE f.user_id = :userId AND f.id = :rootId AND f.deleted = false "
+            + "UNION ALL "
+            + "SELECT c.id, c.name, c.parent_id, c.created_at, c.updated_at, t.depth + 1 FROM folders c "
+            + "JOIN tree t ON c.parent_id = t.id WHERE t.depth < :maxDepth AND c.deleted = false) " + TREE_SELECT, nativeQuery = true)
+    List<FolderTreeRow> findSubtree(@Param("userId") Long userId, @Param("rootId") Long rootId, @Param("maxDepth") int maxDepth);
+
+    @Query(RESPONSE_SELECT + "where f.user = :user and f.deleted = false order by f.name, f.id")
+    List<FolderResponse> findResponsesByUser(@Param("user") User user);
+
+    @Query(RESPONSE_SELECT + "where f.user = :user and p.id = :parentId and f.deleted = false order by f.name, f.id")
+    List<FolderResponse> findResponsesByParent(@Param("user") User user, @Param("parentId") Long parentId);
+
+    // Materialized-path lookups: ancestors are the ids in a folder's path, descendants share its prefix
+    @Query(RESPONSE_SELECT + "where f.user = :user and f.id in :ids order by f.depth")
+    List<FolderResponse> findResponsesByIdsOrderByDepth(@Param("user") User user, @Param("ids") Collection<Long> ids);
+
+    @Query(RESPONSE_SELECT + "where f.user = :user and f.path like concat(:prefix, '%') and f.path <> :prefix and f.deleted = false "
+            + "order by f.depth, f.name, f.id")
+    List<FolderResponse> findDescendantResponses(@Param("user") User user, @Param("prefix") String prefix);
+
+    @Query("select new com.cloudstore.dto.FolderSizeResponse(count(fi), coalesce(sum(fi.size), 0L)) from File fi "
+            + "join fi.folder fo where fo.user = :user and fo.path like concat(:prefix, '%') and fi.deleted = false")
+    FolderSizeResponse sumSubtree(@Param("user") User user, @Param("prefix") String prefix);
+
+    // Rewrites the prefix of the moved folder and everything below it in one statement
+    @Modifying
+    @Query("update Folder f set f.path = concat(:newPrefix, substring(f.path, :oldLength + 1)), f.depth = f.depth + :depthDelta "
+            + "where f.user = :user and f.path like concat(:oldPrefix, '%')")
+    int rewritePathPrefix(@Param("user") User user, @Param("oldPrefix") String oldPrefix, @Param("oldLength") int oldLength,
+                          @Param("newPrefix") String newPrefix, @Param("depthDelta") int depthDelta);
+
+    boolean existsByPathIsNull();
+
+    // Derives path and depth from the parent pointers for folders created before paths existed
+    @Transactional
+    @Modifying
+    @Query(value = "WITH RECURSIVE tree AS ("
+            + "SELECT id, CAST('/' || id || '/' AS varchar(2048)) AS path, 0 AS depth FROM folders WHERE parent_id IS NULL "
+            + "UNION ALL "
+            + "SELECT c.id, CAST(t.path || c.id || '/' AS varchar(2048)), t.depth + 1 FROM folders c JOIN tree t ON c.parent_id = t.id) "
+            + "UPDATE folders f SET path = tree.path, depth = tree.depth FROM tree "
+            + "WHERE f.id = tree.id AND (f.path IS DISTINCT FROM tree.path OR f.depth IS DISTINCT FROM tree.depth)",
+            nativeQuery = true)
+    int rebuildPaths();
+
+    @Modifying
+    @Query("update Folder f set f.deleted = true, f.deletedAt = :now where f.user = :user and f.path like concat(:prefix, '%')")
+    int markSubtreeDeleted(@Param("user") User user, @Param("prefix") String prefix, @Param("now") LocalDateTime now);
+
+    // Deleted folders with no subfolders and no files left, deepest first, so parents follow their children;
+    // SKIP LOCKED lets several nodes purge at once without waiting on each other
+    @Query(value = "SELECT fo.id FROM folders fo WHERE fo.deleted = true "
+            + "AND NOT EXISTS (SELECT 1 FROM folders c WHERE c.parent_id = fo.id) "
+            + "AND NOT EXISTS (SELECT 1 FROM files fi WHERE fi.folder_id = fo.id) "
+            + "ORDER BY fo.depth DESC LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> lockEmptyDeletedFolders(@Param("limit") int limit);
+
+    @Modifying
+    @Query("delete from Folder f where f.id in :ids")
+    int deleteAllByIds(@Param("ids") Collection<Long> ids);
+}
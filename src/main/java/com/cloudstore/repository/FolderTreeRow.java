@@ -0,0 +1,15 @@
+package com.cloudstore.repository;
+
+import java.time.LocalDateTime;
+
+// Row shape of the recursive folder tree query: one folder plus the files directly inside it
+public interface FolderTreeRow {
+    Long getId();
+    String getName();
+    Long getParentId();
+    Integer getDepth();
+    LocalDateTime getCreatedAt();
+    LocalDateTime getUpdatedAt();
+    Long getFileCount();
+    Long getTotalSize();
+}
@@ -0,0 +1,37 @@
+package com.cloudstore.repository;
+
+import com.cloudstore.model.FolderUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
+
+public interface FolderUsageRepository extends JpaRepository<FolderUsage, Long> {
+
+    @Modifying
+    @Query(value = "INSERT INTO folder_usage (folder_id, user_id, file_count, total_bytes) "
+            + "VALUES (:folderId, :userId, :files, :bytes) "
+            + "ON CONFLICT (folder_id) DO UPDATE SET file_count = folder_usage.file_count + EXCLUDED.file_count, "
+            + "total_bytes = folder_usage.total_bytes + EXCLUDED.total_bytes", nativeQuery = true)
+    int add(@Param("folderId") Long folderId, @Param("userId") Long userId, @Param("files") long files,
+            @Param("bytes") long bytes);
+
+    @Modifying
+    @Query("delete from FolderUsage u where u.folderId in :folderIds")
+    int deleteAllByFolderIds(@Param("folderIds") Collection<Long> folderIds);
+
+    @Modifying
+    @Query(value = "INSERT INTO folder_usage (folder_id, user_id, file_count, total_bytes) "
+            + "SELECT fo.id, fo.user_id, count(f.id), coalesce(sum(f.size), 0) "
+            + "FROM folders fo LEFT JOIN files f ON f.folder_id = fo.id AND NOT f.deleted WHERE fo.user_id IN (:userIds) "
+            + "GROUP BY fo.id, fo.user_id "
+            + "ON CONFLICT (folder_id) DO UPDATE SET file_count = EXCLUDED.file_count, total_bytes = EXCLUDED.total_bytes",
+            nativeQuery = true)
+    int reconcile(@Param("userIds") Collection<Long> userIds);
+
+    @Modifying
+    @Query(value = "DELETE FROM folder_usage fu WHERE NOT EXISTS (SELECT 1 FROM folders fo WHERE fo.id = fu.folder_id)",
+            nativeQuery = true)
+    int deleteOrphans();
+}
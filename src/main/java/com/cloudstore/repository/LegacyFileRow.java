@@ -0,0 +1,10 @@
+package com.cloudstore.repository;
+
+import java.time.LocalDateTime;
+
+// A file stored at a plain path (written before the blob store) as seen by the storage consistency scanner
+public interface LegacyFileRow {
+    Long getId();
+    String getPath();
+    LocalDateTime getMissingAt();
+}
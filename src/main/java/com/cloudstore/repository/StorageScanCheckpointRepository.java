@@ -0,0 +1,7 @@
+package com.cloudstore.repository;
+
+import com.cloudstore.model.StorageScanCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface StorageScanCheckpointRepository extends JpaRepository<StorageScanCheckpoint, String> {
+}
@@ -0,0 +1,17 @@
+package com.cloudstore.repository;
+
+import com.cloudstore.model.UploadChunk;
+import com.cloudstore.model.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.List;
+
+public interface UploadChunkRepository extends JpaRepository<UploadChunk, Long> {
+    List<UploadChunk> findAllBySessionOrderByStartOffset(UploadSession session);
+
+    @Modifying
+    @Query("delete from UploadChunk c where c.session = :session")
+    void deleteAllBySession(@Param("session") UploadSession session);
+}
@@ -0,0 +1,28 @@
+package com.cloudstore.repository;
+
+import com.cloudstore.model.UploadSession;
+import com.cloudstore.model.User;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+    Optional<UploadSession> findByIdAndUser(String id, User user);
+    List<UploadSession> findAllByExpiresAtBefore(LocalDateTime cutoff);
+
+    // Compare-and-set: only one commit claims a session (1), any other gets 0
+    @Transactional
+    @Modifying
+    @Query("update UploadSession s set s.committing = true where s.id = :id and s.user = :user and s.committing = false")
+    int claimForCommit(@Param("id") String id, @Param("user") User user);
+
+    @Transactional
+    @Modifying
+    @Query("update UploadSession s set s.committing = false where s.id = :id")
+    int releaseClaim(@Param("id") String id);
+}
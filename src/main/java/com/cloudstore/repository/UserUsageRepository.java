@@ -0,0 +1,61 @@
+package com.cloudstore.repository;
+
+import com.cloudstore.model.UserUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
+import java.util.List;
+
+public interface UserUsageRepository extends JpaRepository<UserUsage, Long> {
+
+    // Applies a delta in one statement, so concurrent changes for the same user never lose an update
+    @Modifying
+    @Query(value = "INSERT INTO user_usage (user_id, file_count, total_bytes, trash_file_count, trash_bytes, updated_at) "
+            + "VALUES (:userId, :files, :bytes, :trashFiles, :trashBytes, now()) "
+            + "ON CONFLICT (user_id) DO UPDATE SET file_count = user_usage.file_count + EXCLUDED.file_count, "
+            + "total_bytes = user_usage.total_bytes + EXCLUDED.total_bytes, "
+            + "trash_file_count = user_usage.trash_file_count + EXCLUDED.trash_file_count, "
+            + "trash_bytes = user_usage.trash_bytes + EXCLUDED.trash_bytes, updated_at = now()", nativeQuery = true)
+    int add(@Param("userId") Long userId, @Param("files") long files, @Param("bytes") long bytes,
+            @Param("trashFiles") long trashFiles, @Param("trashBytes") long trashBytes);
+
+    // Charges new files only while the user stays within the quota, as one statement on the locked row;
+    // 0 means the quota would be exceeded
+    @Modifying
+    @Query(value = "UPDATE user_usage SET file_count = file_count + :files, total_bytes = total_bytes + :bytes, "
+            + "updated_at = now() WHERE user_id = :userId AND total_bytes + trash_bytes + :bytes <= :quota",
+            nativeQuery = true)
+    int addWithinQuota(@Param("userId") Long userId, @Param("files") long files, @Param("bytes") long bytes,
+                       @Param("quota") long quota);
+
+    @Query(value = "SELECT id FROM users WHERE id > :after ORDER BY id LIMIT :limit", nativeQuery = true)
+    List<Long> findUserIdsAfter(@Param("after") long after, @Param("limit") int limit);
+
+    @Modifying
+    @Query(value = "INSERT INTO user_usage (user_id, file_count, total_bytes, trash_file_count, trash_bytes, updated_at) "
+            + "SELECT id, 0, 0, 0, 0, now() FROM users WHERE id IN (:userIds) ON CONFLICT (user_id) DO NOTHING",
+            nativeQuery = true)
+    int createMissing(@Param("userIds") Collection<Long> userIds);
+
+    // The row lock every counter update takes, so a recount never overwrites a concurrent delta
+    @Query(value = "SELECT user_id FROM user_usage WHERE user_id IN (:userIds) ORDER BY user_id FOR UPDATE",
+            nativeQuery = true)
+    List<Long> lockAll(@Param("userIds") Collection<Long> userIds);
+
+    @Modifying
+    @Query(value = "UPDATE user_usage uu SET file_count = s.file_count, total_bytes = s.total_bytes, "
+            + "trash_file_count = s.trash_file_count, trash_bytes = s.trash_bytes, updated_at = now() FROM ("
+            + "SELECT u.id AS user_id, count(f.id) FILTER (WHERE NOT f.deleted) AS file_count, "
+            + "coalesce(sum(f.size) FILTER (WHERE NOT f.deleted), 0) AS total_bytes, "
+            + "count(f.id) FILTER (WHERE f.deleted) AS trash_file_count, "
+            + "coalesce(sum(f.size) FILTER (WHERE f.deleted), 0) AS trash_bytes "
+            + "FROM users u LEFT JOIN files f ON f.user_id = u.id WHERE u.id IN (:userIds) GROUP BY u.id) s "
+            + "WHERE uu.user_id = s.user_id", nativeQuery = true)
+    int reconcile(@Param("userIds") Collection<Long> userIds);
+
+    @Modifying
+    @Query(value = "DELETE FROM user_usage uu WHERE NOT EXISTS (SELECT 1 FROM users u WHERE u.id = uu.user_id)", nativeQuery = true)
+    int deleteOrphans();
+}
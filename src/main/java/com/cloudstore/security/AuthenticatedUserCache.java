@@ -0,0 +1,122 @@
+package com.cloudstore.security;
+
+import com.cloudstore.model.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, TTL-limited cache of authenticated users keyed by user id and token issue time, so a
+ * client re-using its token is authenticated without touching the database. Entries for a user
+ * are dropped whenever their account changes (password, profile, verification, deletion). A cached
+ * user is shared by every request authenticated with that token, so it is never modified in place.
+ */
+@Component
+public class AuthenticatedUserCache {
+    private final long ttlMillis;
+    private final Map<Key, Entry> entries;
+    private final AtomicLong generation = new AtomicLong();
+
+    public AuthenticatedUserCache(
+            @Value("${security.principal-cache.ttl:5m}") Duration ttl,
+            @Value("${security.principal-cache.max-size:10000}") int maxSize) {
+        this.ttlMillis = ttl.toMillis();
+        this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached user for this token, calling {@code loader} on a miss or after expiry.
+     * A {@code null} from the loader is not cached.
+     */
+    public User get(Long userId, long issuedAt, Supplier<User> loader) {
+        Key key = new Key(userId, issuedAt);
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > now) {
+                return entry.user;
+            }
+        }
+        long startedAt = generation.get();
+        User user = loader.get();
+        if (user != null) {
+            synchronized (entries) {
+                // Skip caching if an invalidation raced with the load
+                if (generation.get() == startedAt) {
+                    entries.put(key, new Entry(user, now + ttlMillis));
+                }
+            }
+        }
+        return user;
+    }
+
+    /**
+     * Drops the user's entries. Inside a transaction this happens once it has committed: evicting
+     * earlier would let a concurrent request reload and cache the row as it was before the change.
+     */
+    public void invalidateUser(Long userId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(userId);
+                }
+            });
+        } else {
+            evict(userId);
+        }
+    }
+
+    private void evict(Long userId) {
+        generation.incrementAndGet();
+        synchronized (entries) {
+            entries.keySet().removeIf(key -> Objects.equals(key.userId, userId));
+        }
+    }
+
+    private static final class Key {
+        final Long userId;
+        final long issuedAt;
+
+        Key(Long userId, long issuedAt) {
+            this.userId = userId;
+            this.issuedAt = issuedAt;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return issuedAt == other.issuedAt && Objects.equals(userId, other.userId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, issuedAt);
+        }
+    }
+
+    private static final class Entry {
+        final User user;
+        final long expiresAt;
+
+        Entry(User user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
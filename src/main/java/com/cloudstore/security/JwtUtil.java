@@ -2,18 +2,23 @@ package com.cloudstore.security;
 
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.security.Key;
 import java.util.Date;
 import java.util.Map;
+import java.util.Optional;
 
 
+@Slf4j
 @Component
 public class JwtUtil {
-    private final String jwtSecret;
     private final long jwtExpirationMs;
+    // Built once: deriving the HMAC key and the parser per call showed up on every request
+    private final Key signingKey;
+    private final JwtParser parser;
 
     public JwtUtil(
         @Value("${jwt.secret}") String jwtSecret,
@@ -22,15 +27,14 @@ public class JwtUtil {
         // Provide a fallback default secret if injected secret is invalid
         String defaultSecret = "QwErTyUiOpAsDfGhJkLzXcVbNm1234567890QWERTYUIOPASDFGHJKLZXCVBNM";
         if (jwtSecret == null || jwtSecret.length() < 32) {
-            System.err.println("Warning: JWT secret is invalid or missing. Using default secret.");
+            log.warn("JWT secret is invalid or missing. Using default secret.");
             jwtSecret = defaultSecret;
         }
-        this.jwtSecret = jwtSecret;
         this.jwtExpirationMs = jwtExpirationMs;
-    }
-
-    private Key getSigningKey() {
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        this.signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
     }
 
     public String generateToken(Long userId, String email) {
@@ -39,33 +43,40 @@ public class JwtUtil {
                 .claim("userId", userId)
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + jwtExpirationMs))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
     public Claims getClaimsFromToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parser.parseClaimsJws(token).getBody();
     }
 
-    public boolean validateToken(String token) {
+    /**
+     * Verifies the token and returns its claims in a single parse, or empty if the token is
+     * malformed, badly signed or expired.
+     */
+    public Optional<Claims> parseValidClaims(String token) {
         try {
-            getClaimsFromToken(token);
-            return true;
+            return Optional.of(getClaimsFromToken(token));
         } catch (JwtException | IllegalArgumentException e) {
-            return false;
+            return Optional.empty();
         }
     }
 
+    public boolean validateToken(String token) {
+        return parseValidClaims(token).isPresent();
+    }
+
     public String getEmailFromToken(String token) {
         return getClaimsFromToken(token).getSubject();
     }
 
     public Long getUserIdFromToken(String token) {
-        Object userId = getClaimsFromToken(token).get("userId");
+        return getUserId(getClaimsFromToken(token));
+    }
+
+    public Long getUserId(Claims claims) {
+        Object userId = claims.get("userId");
         return userId != null ? Long.valueOf(userId.toString()) : null;
     }
-} 
\ No newline at end of file
+}
@@ -3,6 +3,7 @@ package com.cloudstore.service;
 import com.cloudstore.dto.*;
 import com.cloudstore.model.User;
 import com.cloudstore.repository.UserRepository;
+import com.cloudstore.security.AuthenticatedUserCache;
 import com.cloudstore.security.JwtUtil;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -19,6 +20,7 @@ public class AuthService {
     private final PasswordEncoder passwordEncoder;
     private final JwtUtil jwtUtil;
     private final EmailService emailService;
+    private final AuthenticatedUserCache authenticatedUserCache;
 
     @Transactional
     public AuthResponse register(RegisterRequest request) {
@@ -75,6 +77,7 @@ public class AuthService {
         user.setEmailVerificationCode(null);
         user.setEmailVerificationExpiry(null);
         userRepository.save(user);
+        authenticatedUserCache.invalidateUser(user.getId());
     }
 
     public void forgotPassword(String email) {
@@ -94,5 +97,6 @@ public class AuthService {
                 .orElseThrow(() -> new RuntimeException("User not found"));
         user.setPassword(passwordEncoder.encode(newPassword));
         userRepository.save(user);
+        authenticatedUserCache.invalidateUser(user.getId());
     }
 } 
\ No newline at end of file
@@ -0,0 +1,320 @@
+package com.cloudstore.service;
+
+import com.cloudstore.dto.CompressionJobResponse;
+import com.cloudstore.dto.CompressionRequest;
+import com.cloudstore.dto.CompressionResponse;
+import com.cloudstore.model.CompressionJob;
+import com.cloudstore.model.CompressionJob.Status;
+import com.cloudstore.model.File;
+import com.cloudstore.model.User;
+import com.cloudstore.repository.CompressionJobRepository;
+import com.cloudstore.repository.FileRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs file compression off the request thread. Jobs are persisted in {@code compression_jobs},
+ * which is also the queue: a dispatcher claims QUEUED rows with a compare-and-set update and hands
+ * them to a bounded worker pool per job type, so a burst of video jobs can never starve image work
+ * and nothing is lost when the process restarts. Workers heartbeat their rows, and each heartbeat
+ * stops local workers whose job is no longer RUNNING (cancelled through any node) and puts RUNNING
+ * rows whose heartbeat has gone stale (a crashed node) back in the queue.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CompressionJobService {
+    private static final List<String> TYPES = List.of("image", "video", "archive");
+    private static final EnumSet<Status> ACTIVE = EnumSet.of(Status.QUEUED, Status.RUNNING);
+    private static final long PROGRESS_WRITE_INTERVAL_MS = 1000;
+
+    private final CompressionJobRepository compressionJobRepository;
+    private final FileRepository fileRepository;
+    private final FileService fileService;
+    private final MeterRegistry meterRegistry;
+
+    // 0 = one worker per core (images, archives) or half the cores (videos; ffmpeg is multi-threaded itself)
+    @Value("${compression.workers.image:0}")
+    private int imageWorkers;
+
+    @Value("${compression.workers.video:0}")
+    private int videoWorkers;
+
+    @Value("${compression.workers.archive:0}")
+    private int archiveWorkers;
+
+    @Value("${compression.jobs.stale-after:5m}")
+    private Duration staleAfter;
+
+    private final Map<String, ThreadPoolExecutor> executors = new HashMap<>();
+    private final Map<String, Future<?>> running = new ConcurrentHashMap<>();
+    private volatile boolean shuttingDown;
+
+    @PostConstruct
+    void startWorkers() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        executors.put("image", newPool("image", imageWorkers > 0 ? imageWorkers : cores));
+        executors.put("video", newPool("video", videoWorkers > 0 ? videoWorkers : Math.max(1, cores / 2)));
+        executors.put("archive", newPool("archive", archiveWorkers > 0 ? archiveWorkers : cores));
+        executors.forEach((type, executor) -> Gauge.builder("cloudstore.compression.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Compression jobs running on this node")
+                .tag("type", type)
+                .register(meterRegistry));
+    }
+
+    private ThreadPoolExecutor newPool(String type, int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        // The hand-off queue only needs to cover the gap between claim and pickup; the backlog lives in the table
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(threads), r -> {
+            Thread t = new Thread(r, "compress-" + type + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Transactional
+    public CompressionJobResponse enqueue(User user, Long fileId, CompressionRequest request) {
+        String type = request.getType() != null ? request.getType().toLowerCase() : null;
+        if (!TYPES.contains(type)) {
+            throw new RuntimeException("Unsupported compression type");
+        }
+        File file = fileRepository.findByIdAndUser(fileId, user)
+                .orElseThrow(() -> new RuntimeException("File not found"));
+        CompressionJob job = CompressionJob.builder()
+                .id(UUID.randomUUID().toString())
+                .user(user)
+                .file(file)
+                .type(type)
+                .quality(request.getQuality())
+                .bitrate(request.getBitrate())
+                .crf(request.getCrf())
+                .resolution(request.getResolution())
+                .format(request.getFormat())
+                .status(Status.QUEUED)
+                .progress(0.0)
+                .build();
+        compressionJobRepository.save(job);
+        // Start right away instead of waiting for the next dispatcher tick, once the row is visible
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dispatch(type);
+                }
+            });
+        }
+        return toResponse(job);
+    }
+
+    public CompressionJobResponse getJob(User user, String jobId) {
+        return compressionJobRepository.findByIdAndUser(jobId, user)
+                .map(this::toResponse)
+                .orElseThrow(() -> new RuntimeException("Compression job not found"));
+    }
+
+    public CompressionJobResponse cancel(User user, String jobId) {
+        CompressionJob job = compressionJobRepository.findByIdAndUser(jobId, user)
+                .orElseThrow(() -> new RuntimeException("Compression job not found"));
+        if (compressionJobRepository.cancel(jobId, ACTIVE, Status.CANCELLED, LocalDateTime.now()) > 0) {
+            // A worker on another node notices on its next heartbeat
+            stopWorker(jobId);
+        }
+        return compressionJobRepository.findById(job.getId()).map(this::toResponse).orElseThrow();
+    }
+
+    @Scheduled(fixedDelayString = "${compression.jobs.dispatch-interval:PT2S}")
+    public void dispatchAll() {
+        TYPES.forEach(this::dispatch);
+    }
+
+    // Claims as many queued jobs of one type as its pool has idle threads
+    synchronized void dispatch(String type) {
+        if (shuttingDown) {
+            return;
+        }
+        ThreadPoolExecutor executor = executors.get(type);
+        int free = executor.getMaximumPoolSize() - executor.getActiveCount() - executor.getQueue().size();
+        if (free <= 0) {
+            return;
+        }
+        for (String jobId : compressionJobRepository.findIdsByStatusAndType(Status.QUEUED, type, PageRequest.of(0, free))) {
+            if (compressionJobRepository.claim(jobId, Status.QUEUED, Status.RUNNING, LocalDateTime.now()) == 0) {
+                continue; // taken by another node or cancelled
+            }
+            // Registered before it can start, so the worker's own cleanup always sees the entry
+            FutureTask<Void> task = new FutureTask<>(() -> run(jobId), null);
+            running.put(jobId, task);
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                running.remove(jobId);
+                compressionJobRepository.transition(jobId, Status.RUNNING, Status.QUEUED, LocalDateTime.now());
+                return;
+            }
+        }
+    }
+
+    private void run(String jobId) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String type = null;
+        String outcome = "failed";
+        try {
+            CompressionJob job = compressionJobRepository.findWithUserAndFile(jobId).orElse(null);
+            if (job == null || job.getStatus() != Status.RUNNING) {
+                return;
+            }
+            type = job.getType();
+            CompressionRequest request = new CompressionRequest();
+            request.setType(job.getType());
+            request.setQuality(job.getQuality());
+            request.setBitrate(job.getBitrate());
+            request.setCrf(job.getCrf());
+            request.setResolution(job.getResolution());
+            request.setFormat(job.getFormat());
+            long[] lastWrite = {0};
+            // startedAt identifies this claim: a job cancelled, or requeued and claimed again elsewhere,
+            // no longer matches, and completing it then rolls back the result row it was saved with
+            LocalDateTime claimedAt = job.getStartedAt();
+            CompressionResponse result = fileService.compressFile(job.getUser(), job.getFile().getId(), request, progress -> {
+                long now = System.currentTimeMillis();
+                if (now - lastWrite[0] >= PROGRESS_WRITE_INTERVAL_MS) {
+                    lastWrite[0] = now;
+                    compressionJobRepository.updateProgress(jobId, progress, Status.RUNNING, LocalDateTime.now());
+                }
+            }, saved -> {
+                if (compressionJobRepository.complete(jobId, saved.getId(), saved.getCompressedSize(), saved.getCompressionRatio(),
+                        claimedAt, Status.RUNNING, Status.COMPLETED, LocalDateTime.now()) == 0) {
+                    throw new CancellationException("Compression job is no longer running");
+                }
+            });
+            outcome = "completed";
+            if (result.getCompressionRatio() != null) {
+                DistributionSummary.builder("cloudstore.compression.ratio")
+                        .description("Space saved by compression, in percent of the original size")
+                        .baseUnit("percent")
+                        .tag("type", type)
+                        .register(meterRegistry)
+                        .record(result.getCompressionRatio());
+            }
+        } catch (Exception e) {
+            if (shuttingDown) {
+                outcome = "requeued";
+                // Interrupted by shutdown: leave it for the next start rather than failing it
+                compressionJobRepository.transition(jobId, Status.RUNNING, Status.QUEUED, LocalDateTime.now());
+            } else {
+                // A cancelled job is no longer RUNNING, so this is a no-op for it
+                String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+                compressionJobRepository.fail(jobId, message.length() > 1000 ? message.substring(0, 1000) : message,
+                        Status.RUNNING, Status.FAILED, LocalDateTime.now());
+                log.warn("compression job failed job={} error={}", jobId, message);
+            }
+        } finally {
+            running.remove(jobId);
+            if (type != null) {
+                sample.stop(Timer.builder("cloudstore.compression")
+                        .description("Time to run a compression job")
+                        .tag("type", type)
+                        .tag("outcome", outcome)
+                        .register(meterRegistry));
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${compression.jobs.heartbeat-interval:PT30S}")
+    public void heartbeat() {
+        if (!running.isEmpty()) {
+            List<String> ids = List.copyOf(running.keySet());
+            compressionJobRepository.touch(ids, Status.RUNNING, LocalDateTime.now());
+            Set<String> stillRunning = new HashSet<>(compressionJobRepository.findIdsStillRunning(ids, Status.RUNNING));
+            for (String jobId : ids) {
+                if (!stillRunning.contains(jobId)) {
+                    log.info("stopping compression job that is no longer running job={}", jobId);
+                    stopWorker(jobId);
+                }
+            }
+        }
+        recoverStaleJobs();
+    }
+
+    private void stopWorker(String jobId) {
+        Future<?> future = running.remove(jobId);
+        if (future != null) {
+            future.cancel(true); // interrupts the worker, which kills any ffmpeg process
+        }
+    }
+
+    // Jobs left RUNNING by a node that died are re-queued once their heartbeat is older than stale-after;
+    // checked at startup and on every heartbeat, so a surviving node picks them up too
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverStaleJobs() {
+        LocalDateTime now = LocalDateTime.now();
+        int requeued = compressionJobRepository.requeueStale(Status.RUNNING, Status.QUEUED, now.minus(staleAfter), now);
+        if (requeued > 0) {
+            log.info("requeued stale compression jobs count={}", requeued);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        shuttingDown = true;
+        executors.values().forEach(ThreadPoolExecutor::shutdownNow);
+        for (ThreadPoolExecutor executor : executors.values()) {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        // Anything still marked as ours goes back to the queue for the next start
+        for (String jobId : running.keySet()) {
+            compressionJobRepository.transition(jobId, Status.RUNNING, Status.QUEUED, LocalDateTime.now());
+        }
+    }
+
+    private CompressionJobResponse toResponse(CompressionJob job) {
+        return CompressionJobResponse.builder()
+                .id(job.getId())
+                .fileId(job.getFile() != null ? job.getFile().getId() : null)
+                .type(job.getType())
+                .status(job.getStatus().name())
+                .progress(job.getProgress())
+                .error(job.getError())
+                .resultFileId(job.getResultFileId())
+                .compressedSize(job.getCompressedSize())
+                .compressionRatio(job.getCompressionRatio())
+                .createdAt(job.getCreatedAt())
+                .startedAt(job.getStartedAt())
+                .finishedAt(job.getFinishedAt())
+                .build();
+    }
+}
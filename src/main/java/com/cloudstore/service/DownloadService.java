@@ -0,0 +1,380 @@
+package com.cloudstore.service;
+
+import com.cloudstore.model.File;
+import com.cloudstore.storage.ObjectStat;
+import com.cloudstore.storage.RemoteFileCache;
+import com.cloudstore.storage.StorageBackend;
+import com.cloudstore.storage.StorageBackendRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Serves stored files over HTTP without loading them onto the heap. Supports conditional
+ * requests ({@code If-None-Match}, {@code If-Modified-Since}), byte ranges including
+ * {@code If-Range} and multi-range requests, and hands whole regions to Tomcat's sendfile
+ * support when the connector offers it.
+ */
+@Service
+public class DownloadService {
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final StorageBackendRegistry storageBackendRegistry;
+    private final TransferMetrics transferMetrics;
+    private final long transferChunkSize;
+    private final long sendfileThreshold;
+
+    public DownloadService(
+            StorageBackendRegistry storageBackendRegistry,
+            TransferMetrics transferMetrics,
+            @Value("${file.download.chunk-size:1048576}") long transferChunkSize,
+            @Value("${file.download.sendfile-threshold:49152}") long sendfileThreshold) {
+        this.storageBackendRegistry = storageBackendRegistry;
+        this.transferMetrics = transferMetrics;
+        this.transferChunkSize = transferChunkSize > 0 ? transferChunkSize : 1048576;
+        this.sendfileThreshold = sendfileThreshold;
+    }
+
+    // Serves a locally stored (non-URL) file from wherever its bytes are kept
+    public void serveStoredFile(File file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (file.getContentHash() == null) {
+            // Stored before the blob store existed: the row points straight at the file
+            serve(Paths.get(file.getPath()), file.getName(), null, request, response);
+            return;
+        }
+        serve(storageBackendRegistry.get(file.getStorageBackend()), file.getContentHash(), file.getName(),
+                file.getContentHash(), request, response);
+    }
+
+    /**
+     * Streams a stored file from the backend holding it. Backends with a local copy are served
+     * from disk (sendfile where possible); others are streamed range by range.
+     */
+    public void serve(StorageBackend backend, String key, String fileName, String contentHash,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Optional<Path> local = backend.localPath(key);
+        if (local.isPresent()) {
+            serve(local.get(), fileName, contentHash, request, response);
+            return;
+        }
+        ObjectStat stat = backend.stat(key).orElseThrow(() -> new RuntimeException("File not found"));
+        serve(new BackendContent(backend, key, stat), fileName, contentHash, request, response);
+    }
+
+    /**
+     * Streams {@code path} as {@code fileName}. When the content hash is known it becomes the ETag,
+     * so identical content validates across files; otherwise size and modification time are used.
+     */
+    public void serve(Path path, String fileName, String contentHash, HttpServletRequest request,
+                      HttpServletResponse response) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            throw new RuntimeException("File not found");
+        }
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        serve(new FileContent(path, attributes.size(), attributes.lastModifiedTime().toMillis()),
+                fileName, contentHash, request, response);
+    }
+
+    /**
+     * Streams an already opened cached file and closes it. The channel is read directly rather
+     * than handed to sendfile by name, since the cache may delete the file meanwhile.
+     */
+    public void serve(RemoteFileCache.OpenedFile file, String fileName, String contentHash,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try (FileChannel channel = file.channel()) {
+            serve(new ChannelContent(channel, file.size(), file.lastModified()), fileName, contentHash, request,
+                    response);
+        }
+    }
+
+    private void serve(Content content, String fileName, String contentHash, HttpServletRequest request,
+                       HttpServletResponse response) throws IOException {
+        Timer.Sample sample = transferMetrics.downloadStarted();
+        long bytes = 0;
+        try {
+            bytes = write(content, fileName, contentHash, request, response);
+        } finally {
+            transferMetrics.downloadFinished(sample, content instanceof BackendContent ? "backend" : "file",
+                    response.getStatus(), bytes);
+        }
+    }
+
+    // Writes the response for content and returns the number of body bytes sent
+    private long write(Content content, String fileName, String contentHash, HttpServletRequest request,
+                       HttpServletResponse response) throws IOException {
+        long length = content.length();
+        long lastModified = content.lastModified();
+        String etag = contentHash != null
+                ? "\"" + contentHash + "\""
+                : "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return 0;
+        }
+
+        MediaType contentType = MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename(fileName, StandardCharsets.UTF_8).build().toString());
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null || !ifRangeMatches(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(contentType.toString());
+            response.setContentLengthLong(length);
+            return writeBody(content, 0, length, request, response);
+        }
+
+        List<long[]> ranges = resolveRanges(rangeHeader, length);
+        if (ranges.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            return 0;
+        }
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        if (ranges.size() == 1) {
+            long start = ranges.get(0)[0];
+            long end = ranges.get(0)[1];
+            response.setContentType(contentType.toString());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            response.setContentLengthLong(end - start + 1);
+            return writeBody(content, start, end - start + 1, request, response);
+        }
+        return writeMultipartRanges(content, ranges, length, contentType, request, response);
+    }
+
+    static boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            long since = request.getDateHeader(HttpHeaders.IF_RANGE);
+            return since != -1 && lastModified / 1000 == since / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses a {@code Range} header into inclusive {@code [start, end]} pairs, dropping ranges that
+     * fall outside the file. A malformed header, or one asking for more bytes than the file holds,
+     * yields no ranges.
+     */
+    static List<long[]> resolveRanges(String rangeHeader, long length) {
+        List<long[]> resolved = new ArrayList<>();
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            return resolved;
+        }
+        long requested = 0;
+        for (HttpRange range : ranges) {
+            long start;
+            long end;
+            try {
+                start = range.getRangeStart(length);
+                end = range.getRangeEnd(length);
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            if (start >= length || start > end) {
+                continue;
+            }
+            resolved.add(new long[] {start, end});
+            requested += end - start + 1;
+        }
+        if (requested > length && resolved.size() > 1) {
+            resolved.clear();
+        }
+        return resolved;
+    }
+
+    private long writeMultipartRanges(Content content, List<long[]> ranges, long length, MediaType contentType,
+                                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = 0;
+        for (long[] range : ranges) {
+            byte[] header = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": bytes " + range[0] + "-" + range[1] + "/" + length + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(header);
+            contentLength += header.length + (range[1] - range[0] + 1);
+        }
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += closing.length;
+
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if ("HEAD".equalsIgnoreCase(request.getMethod())) {
+            return 0;
+        }
+        OutputStream out = response.getOutputStream();
+        for (int i = 0; i < ranges.size(); i++) {
+            out.write(partHeaders.get(i));
+            long[] range = ranges.get(i);
+            content.copy(range[0], range[1] - range[0] + 1, out);
+        }
+        out.write(closing);
+        out.flush();
+        return contentLength;
+    }
+
+    private long writeBody(Content content, long start, long count, HttpServletRequest request,
+                           HttpServletResponse response) throws IOException {
+        if ("HEAD".equalsIgnoreCase(request.getMethod()) || count == 0) {
+            return 0;
+        }
+        if (content instanceof FileContent file && count >= sendfileThreshold
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Tomcat performs the kernel-level transfer once the handler returns
+            request.setAttribute(SENDFILE_FILENAME, file.path().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + count);
+            return count;
+        }
+        OutputStream out = response.getOutputStream();
+        content.copy(start, count, out);
+        out.flush();
+        return count;
+    }
+
+    private void transfer(FileChannel channel, long position, long count, WritableByteChannel target) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long transferred = channel.transferTo(position, Math.min(remaining, transferChunkSize), target);
+            if (transferred <= 0) {
+                throw new IOException("File ended before the requested range was sent");
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+    }
+
+    // The bytes behind a response: a local file, or an object in a storage backend
+    private interface Content {
+        long length();
+
+        long lastModified();
+
+        void copy(long start, long count, OutputStream out) throws IOException;
+    }
+
+    private record BackendContent(StorageBackend backend, String key, ObjectStat stat) implements Content {
+        @Override
+        public long length() {
+            return stat.getSize();
+        }
+
+        @Override
+        public long lastModified() {
+            return stat.getLastModified();
+        }
+
+        @Override
+        public void copy(long start, long count, OutputStream out) throws IOException {
+            try (InputStream in = backend.getRange(key, start, count)) {
+                if (in.transferTo(out) < count) {
+                    throw new IOException("Object ended before the requested range was sent");
+                }
+            }
+        }
+    }
+
+    private final class ChannelContent implements Content {
+        private final FileChannel channel;
+        private final long length;
+        private final long lastModified;
+
+        ChannelContent(FileChannel channel, long length, long lastModified) {
+            this.channel = channel;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public long lastModified() {
+            return lastModified;
+        }
+
+        @Override
+        public void copy(long start, long count, OutputStream out) throws IOException {
+            transfer(channel, start, count, Channels.newChannel(out));
+        }
+    }
+
+    private final class FileContent implements Content {
+        private final Path path;
+        private final long length;
+        private final long lastModified;
+
+        FileContent(Path path, long length, long lastModified) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        Path path() {
+            return path;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public long lastModified() {
+            return lastModified;
+        }
+
+        @Override
+        public void copy(long start, long count, OutputStream out) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                transfer(channel, start, count, Channels.newChannel(out));
+            }
+        }
+    }
+}
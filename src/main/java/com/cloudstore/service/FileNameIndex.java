@@ -0,0 +1,234 @@
+package com.cloudstore.service;
+
+import com.cloudstore.repository.FileRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-process type-ahead index over file names. For each recently active user it keeps every
+ * word-start suffix of their (lower-cased) file names in sorted order, so a prefix lookup is a
+ * binary search instead of a database round-trip. A suffix is stored as an offset into its name
+ * rather than as a string of its own. Indexes are built lazily and dropped whenever the user's files
+ * change, once that change has committed; all users' indexes together stay within
+ * {@code max-memory}, least recently used evicted first.
+ */
+@Component
+public class FileNameIndex {
+    private static final int MAX_TOKENS_PER_NAME = 8;
+    private static final int GENERATION_STRIPES = 4096;
+    // Approximate heap cost of a String object and its array header
+    private static final int STRING_BYTES = 56;
+
+    private final FileRepository fileRepository;
+    private final int maxUsers;
+    private final int maxEntriesPerUser;
+    private final long maxBytes;
+    // Access-ordered, so iteration starts at the least recently used index; guarded by itself
+    private final LinkedHashMap<Long, UserIndex> indexes = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+    // Invalidation counters per user (striped, so memory stays bounded): a build that raced with an
+    // invalidation of its own user is not cached, other users' uploads don't interfere
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public FileNameIndex(
+            FileRepository fileRepository,
+            @Value("${file.search.name-index.max-users:1000}") int maxUsers,
+            @Value("${file.search.name-index.max-files-per-user:200000}") int maxEntriesPerUser,
+            @Value("${file.search.name-index.max-memory:256MB}") DataSize maxMemory) {
+        this.fileRepository = fileRepository;
+        this.maxUsers = maxUsers;
+        this.maxEntriesPerUser = maxEntriesPerUser;
+        this.maxBytes = maxMemory.toBytes();
+    }
+
+    /**
+     * Ids of up to {@code limit} files with a word in their name starting with {@code prefix}, or
+     * {@code null} when the user has too many files to index in memory.
+     */
+    public List<Long> suggest(Long userId, String prefix, int limit) {
+        UserIndex index;
+        synchronized (indexes) {
+            index = indexes.get(userId);
+        }
+        if (index == null) {
+            int stripe = stripe(userId);
+            long startedAt = generations.get(stripe);
+            index = build(userId);
+            // Only cache if nothing was invalidated while the index was being built
+            if (generations.get(stripe) == startedAt) {
+                cache(userId, index);
+            }
+        }
+        return index.tooLarge ? null : index.lookup(prefix.toLowerCase(Locale.ROOT), limit);
+    }
+
+    // Inside a transaction the index is dropped after commit; dropping it earlier would let a
+    // concurrent lookup rebuild it from the rows as they were before the change
+    public void invalidate(Long userId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(userId);
+                }
+            });
+        } else {
+            evict(userId);
+        }
+    }
+
+    private void evict(Long userId) {
+        generations.incrementAndGet(stripe(userId));
+        synchronized (indexes) {
+            UserIndex removed = indexes.remove(userId);
+            if (removed != null) {
+                usedBytes -= removed.bytes;
+            }
+        }
+    }
+
+    // Drops least recently used indexes until the budget holds, never the one just added
+    private void cache(Long userId, UserIndex index) {
+        synchronized (indexes) {
+            UserIndex previous = indexes.put(userId, index);
+            usedBytes += index.bytes - (previous != null ? previous.bytes : 0);
+            Iterator<Map.Entry<Long, UserIndex>> it = indexes.entrySet().iterator();
+            while ((usedBytes > maxBytes || indexes.size() > maxUsers) && it.hasNext()) {
+                Map.Entry<Long, UserIndex> eldest = it.next();
+                if (eldest.getKey().equals(userId)) {
+                    continue;
+                }
+                usedBytes -= eldest.getValue().bytes;
+                it.remove();
+            }
+        }
+    }
+
+    private static int stripe(Long userId) {
+        return Math.floorMod(userId.hashCode(), GENERATION_STRIPES);
+    }
+
+    private UserIndex build(Long userId) {
+        List<Object[]> rows = fileRepository.findNamesByUserId(userId, PageRequest.of(0, maxEntriesPerUser + 1));
+        if (rows.size() > maxEntriesPerUser) {
+            return UserIndex.TOO_LARGE;
+        }
+        String[] names = new String[rows.size()];
+        long[] ids = new long[rows.size()];
+        List<Long> suffixes = new ArrayList<>(rows.size() * 2);
+        long bytes = 0;
+        for (int n = 0; n < rows.size(); n++) {
+            ids[n] = (Long) rows.get(n)[0];
+            String name = ((String) rows.get(n)[1]).toLowerCase(Locale.ROOT);
+            names[n] = name;
+            bytes += STRING_BYTES + 2L * name.length();
+            int tokens = 0;
+            for (int i = 0; i < name.length() && tokens < MAX_TOKENS_PER_NAME; i++) {
+                boolean wordStart = Character.isLetterOrDigit(name.charAt(i))
+                        && (i == 0 || !Character.isLetterOrDigit(name.charAt(i - 1)));
+                if (wordStart) {
+                    suffixes.add(UserIndex.entry(n, i));
+                    tokens++;
+                }
+            }
+        }
+        bytes += 12L * names.length + 8L * ids.length + 8L * suffixes.size();
+        // A single library over the whole budget would only evict everyone else and then itself
+        if (bytes > maxBytes) {
+            return UserIndex.TOO_LARGE;
+        }
+        suffixes.sort((a, b) -> UserIndex.compare(names, a, b));
+        long[] entries = new long[suffixes.size()];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = suffixes.get(i);
+        }
+        return new UserIndex(names, ids, entries, bytes, false);
+    }
+
+    private static final class UserIndex {
+        static final UserIndex TOO_LARGE = new UserIndex(new String[0], new long[0], new long[0], 0, true);
+
+        final String[] names;
+        final long[] ids;
+        // Sorted suffixes, each the name's position in the high and the offset in the low 32 bits
+        final long[] entries;
+        final long bytes;
+        final boolean tooLarge;
+
+        UserIndex(String[] names, long[] ids, long[] entries, long bytes, boolean tooLarge) {
+            this.names = names;
+            this.ids = ids;
+            this.entries = entries;
+            this.bytes = bytes;
+            this.tooLarge = tooLarge;
+        }
+
+        static long entry(int name, int offset) {
+            return ((long) name << 32) | offset;
+        }
+
+        static int compare(String[] names, long a, long b) {
+            String first = names[(int) (a >>> 32)];
+            String second = names[(int) (b >>> 32)];
+            int i = (int) a;
+            int j = (int) b;
+            while (i < first.length() && j < second.length()) {
+                int c = Character.compare(first.charAt(i++), second.charAt(j++));
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return Integer.compare(first.length() - i, second.length() - j);
+        }
+
+        List<Long> lookup(String prefix, int limit) {
+            // First suffix not below the prefix
+            int low = 0;
+            int high = entries.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compareToPrefix(entries[mid], prefix) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            Set<Long> matches = new LinkedHashSet<>();
+            for (int i = low; i < entries.length && matches.size() < limit; i++) {
+                String name = names[(int) (entries[i] >>> 32)];
+                if (!name.startsWith(prefix, (int) entries[i])) {
+                    break;
+                }
+                matches.add(ids[(int) (entries[i] >>> 32)]);
+            }
+            return new ArrayList<>(matches);
+        }
+
+        private int compareToPrefix(long entry, String prefix) {
+            String name = names[(int) (entry >>> 32)];
+            int offset = (int) entry;
+            int length = Math.min(name.length() - offset, prefix.length());
+            for (int k = 0; k < length; k++) {
+                int c = Character.compare(name.charAt(offset + k), prefix.charAt(k));
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return Integer.compare(name.length() - offset, prefix.length());
+        }
+    }
+}
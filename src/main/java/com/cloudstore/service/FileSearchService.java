@@ -0,0 +1,138 @@
+package com.cloudstore.service;
+
+import com.cloudstore.dto.FileResponse;
+import com.cloudstore.model.User;
+import com.cloudstore.repository.FileRepository;
+import com.cloudstore.repository.FileResponseView;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Name search backed by PostgreSQL indexes: {@code pg_trgm} for substring and fuzzy matches and a
+ * {@code tsvector} index for whole-word matches, ranked with prefix matches first and then by
+ * trigram similarity. Falls back to a plain {@code LIKE} query when {@code pg_trgm} is missing.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FileSearchService {
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 200;
+    private static final int DEFAULT_SUGGESTIONS = 10;
+
+    // Mirrors db/migration/V5__file_name_search.sql; CONCURRENTLY keeps writers unblocked
+    private static final Map<String, String> INDEX_STATEMENTS = Map.of(
+            "idx_files_name_trgm", "CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_files_name_trgm ON files USING gin (lower(name) gin_trgm_ops)",
+            "idx_files_name_tsv", "CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_files_name_tsv ON files USING gin (to_tsvector('simple', name))"
+    );
+
+    private final FileRepository fileRepository;
+    private final FileNameIndex fileNameIndex;
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile boolean trigramAvailable;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureSearchIndexes() {
+        try {
+            jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+        } catch (Exception e) {
+            log.warn("could not install pg_trgm, search falls back to LIKE error={}", e.getMessage());
+        }
+        INDEX_STATEMENTS.forEach(this::ensureIndex);
+        try {
+            Integer installed = jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM pg_extension WHERE extname = 'pg_trgm'", Integer.class);
+            trigramAvailable = installed != null && installed > 0;
+        } catch (Exception e) {
+            trigramAvailable = false;
+        }
+    }
+
+    // A concurrent build that fails or is interrupted leaves an invalid index that IF NOT EXISTS would
+    // keep forever, unused by the planner, so one is dropped and built again
+    private void ensureIndex(String name, String statement) {
+        try {
+            List<Boolean> valid = jdbcTemplate.queryForList("SELECT i.indisvalid FROM pg_index i "
+                    + "JOIN pg_class c ON c.oid = i.indexrelid WHERE c.relname = ?", Boolean.class, name);
+            if (!valid.isEmpty() && !Boolean.TRUE.equals(valid.get(0))) {
+                log.warn("search index is invalid, rebuilding index={}", name);
+                jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + name);
+            }
+            jdbcTemplate.execute(statement);
+        } catch (Exception e) {
+            log.warn("could not create search index index={} error={}", name, e.getMessage());
+        }
+    }
+
+    public List<FileResponse> search(User user, String query, Integer page, Integer limit) {
+        String normalized = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+        if (normalized.isEmpty()) {
+            return List.of();
+        }
+        int pageSize = limit == null || limit <= 0 ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT);
+        int pageNumber = page == null || page < 0 ? 0 : page;
+        String escaped = escapeLike(normalized);
+
+        if (!trigramAvailable) {
+            return fileRepository.searchByNameLike(user, "%" + escaped + "%", PageRequest.of(pageNumber, pageSize));
+        }
+        return fileRepository.searchByName(user.getId(), normalized, "%" + escaped + "%", escaped + "%",
+                        pageSize, pageNumber * pageSize)
+                .stream()
+                .map(FileSearchService::toResponse)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Type-ahead: files with a word in their name starting with {@code prefix}, answered from the
+     * in-process index when the user's library fits in it.
+     */
+    public List<FileResponse> suggest(User user, String prefix, Integer limit) {
+        String normalized = prefix == null ? "" : prefix.trim().toLowerCase(Locale.ROOT);
+        if (normalized.isEmpty()) {
+            return List.of();
+        }
+        int size = limit == null || limit <= 0 ? DEFAULT_SUGGESTIONS : Math.min(limit, MAX_LIMIT);
+        List<Long> ids = fileNameIndex.suggest(user.getId(), normalized, size);
+        if (ids == null) {
+            return search(user, normalized, 0, size);
+        }
+        Map<Long, FileResponse> byId = fileRepository.findResponsesByIds(user, ids).stream()
+                .collect(Collectors.toMap(FileResponse::getId, Function.identity()));
+        return ids.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private static FileResponse toResponse(FileResponseView view) {
+        return new FileResponse(
+                view.getId(),
+                view.getName(),
+                view.getSize(),
+                Boolean.TRUE.equals(view.getFavourite()),
+                Boolean.TRUE.equals(view.getDeleted()),
+                view.getFolderId(),
+                view.getCreatedAt(),
+                view.getUpdatedAt(),
+                view.getUrl()
+        );
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
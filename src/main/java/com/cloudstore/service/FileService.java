@@ -1,92 +1,125 @@
 package com.cloudstore.service;
 
+import com.cloudstore.dto.BatchFileRequest;
+import com.cloudstore.dto.BatchFileResponse;
 import com.cloudstore.dto.CompressionRequest;
 import com.cloudstore.dto.CompressionResponse;
+import com.cloudstore.dto.FilePageResponse;
 import com.cloudstore.dto.FileResponse;
 import com.cloudstore.dto.RenameFileRequest;
+import com.cloudstore.dto.UploadFilesResponse;
 import com.cloudstore.model.File;
 import com.cloudstore.model.Folder;
 import com.cloudstore.model.User;
+import com.cloudstore.repository.CompressionJobRepository;
+import com.cloudstore.repository.FileListQuery;
+import com.cloudstore.repository.FileUsage;
 import com.cloudstore.repository.FileRepository;
 import com.cloudstore.repository.FolderRepository;
 import com.cloudstore.repository.UserRepository;
+import com.cloudstore.storage.BlobStore;
+import com.cloudstore.storage.CloudStorageClient;
+import com.cloudstore.storage.CloudUpload;
+import com.cloudstore.storage.RemoteFileCache;
+import com.cloudstore.storage.RemoteUrlPolicy;
+import com.cloudstore.storage.StorageBackend;
+import com.cloudstore.storage.StorageBackendRegistry;
+import com.cloudstore.storage.StoredBlob;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 import java.util.stream.Collectors;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import com.cloudinary.Cloudinary;
-import com.cloudinary.utils.ObjectUtils;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class FileService {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_BATCH_SIZE = 1000;
+
     private final FileRepository fileRepository;
+    private final CompressionJobRepository compressionJobRepository;
     private final UserRepository userRepository;
     private final FolderRepository folderRepository;
+    private final BlobStore blobStore;
+    private final FileNameIndex fileNameIndex;
+    private final VideoTranscoder videoTranscoder;
+    private final CloudStorageClient cloudStorageClient;
+    private final StorageBackendRegistry storageBackendRegistry;
+    private final RemoteFileCache remoteFileCache;
+    private final RemoteUrlPolicy remoteUrlPolicy;
+    private final ThumbnailService thumbnailService;
+    private final UsageService usageService;
+    private final TransferMetrics transferMetrics;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${file.upload.parallelism:8}")
+    private int uploadParallelism;
+
+    private ExecutorService uploadExecutor;
+
+    @PostConstruct
+    void startUploadWorkers() {
+        AtomicInteger counter = new AtomicInteger();
+        int threads = Math.max(1, uploadParallelism);
+        uploadExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "upload-writer-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
 
-    @Value("${file.upload-dir:uploads}")
-    private String uploadDir;
-
-    @Value("${CLOUDINARY_URL:}")
-    private String cloudinaryUrl;
+    @PreDestroy
+    void stopUploadWorkers() {
+        uploadExecutor.shutdownNow();
+    }
 
     private User getCurrentUser() {
         String email = SecurityContextHolder.getContext().getAuthentication().getName();
         return userRepository.findByEmail(email).orElseThrow(() -> new RuntimeException("User not found"));
     }
 
-    public List<FileResponse> listFiles(Optional<Long> folderId) {
-        User user = getCurrentUser();
-        List<File> files;
-        if (folderId.isPresent()) {
-            Folder folder = folderRepository.findById(folderId.get()).orElse(null);
-            files = fileRepository.findAllByFolder(folder);
-        } else {
-            files = fileRepository.findAllByUser(user);
-        }
-        return files.stream().map(this::toResponse).collect(Collectors.toList());
-    }
-
     @Transactional
     public FileResponse uploadFile(MultipartFile multipartFile, Optional<Long> folderId) throws IOException {
-        User user = getCurrentUser();
-        Folder folder = folderId.flatMap(folderRepository::findById).orElse(null);
-        Path dirPath = Paths.get(uploadDir);
-        if (!Files.exists(dirPath)) {
-            Files.createDirectories(dirPath);
-        }
-        String fileName = System.currentTimeMillis() + "_" + multipartFile.getOriginalFilename();
-        Path filePath = dirPath.resolve(fileName);
-        try (FileOutputStream fos = new FileOutputStream(filePath.toFile())) {
-            fos.write(multipartFile.getBytes());
-        }
-        File file = File.builder()
-                .user(user)
-                .name(multipartFile.getOriginalFilename())
-                .path(filePath.toString())
-                .size(multipartFile.getSize())
-                .favourite(false)
-                .deleted(false)
-                .folder(folder)
-                .build();
-        fileRepository.save(file);
-        
-        return toResponse(file);
+        return uploadFileForUser(getCurrentUser(), multipartFile, folderId, null);
     }
 
     @Transactional
@@ -98,15 +131,20 @@ public class FileService {
         return responses;
     }
 
-    public byte[] downloadFile(Long fileId) throws IOException {
-        File file = fileRepository.findById(fileId).orElseThrow(() -> new RuntimeException("File not found"));
-        return Files.readAllBytes(Paths.get(file.getPath()));
+    private java.io.InputStream openStoredContent(File file) throws IOException {
+        if (file.getContentHash() == null) {
+            // Stored before the blob store existed: the row points straight at the file
+            return Files.newInputStream(Paths.get(file.getPath()));
+        }
+        return storageBackendRegistry.get(file.getStorageBackend()).get(file.getContentHash());
     }
 
     @Transactional
     public void deleteFile(Long fileId) {
         File file = fileRepository.findById(fileId).orElseThrow(() -> new RuntimeException("File not found"));
+        usageService.deletedChanged(List.of(FileUsage.of(file)), true);
         file.setDeleted(true);
+        file.setDeletedAt(LocalDateTime.now());
         fileRepository.save(file);
     }
 
@@ -129,7 +167,9 @@ public class FileService {
     @Transactional
     public void restoreFile(Long fileId) {
         File file = fileRepository.findById(fileId).orElseThrow(() -> new RuntimeException("File not found"));
+        usageService.deletedChanged(List.of(FileUsage.of(file)), false);
         file.setDeleted(false);
+        file.setDeletedAt(null);
         fileRepository.save(file);
     }
 
@@ -148,20 +188,16 @@ public class FileService {
     @Transactional
     public void permanentlyDeleteFile(Long fileId) {
         File file = fileRepository.findById(fileId).orElseThrow(() -> new RuntimeException("File not found"));
+        compressionJobRepository.deleteAllByFile(file);
+        thumbnailService.deleteForFile(file);
+        usageService.filesRemoved(List.of(FileUsage.of(file)));
         fileRepository.delete(file);
+        if (file.getContentHash() != null) {
+            blobStore.release(file.getContentHash());
+        }
     }
 
-    public List<FileResponse> searchFilesByName(String query) {
-        User user = getCurrentUser();
-        List<File> files = fileRepository.findAllByUser(user);
-        String lowerQuery = query.toLowerCase();
-        return files.stream()
-            .filter(f -> f.getName() != null && f.getName().toLowerCase().contains(lowerQuery))
-            .map(this::toResponse)
-            .collect(java.util.stream.Collectors.toList());
-    }
-
-    private FileResponse toResponse(File file) {
+    public FileResponse toResponse(File file) {
         boolean isCompressed = file.getName() != null && file.getName().contains("_compressed");
         return new FileResponse(
                 file.getId(),
@@ -180,7 +216,11 @@ public class FileService {
     @Transactional
     public FileResponse registerCloudFile(String name, String url, Long size, String type, Long folderId) {
         User user = getCurrentUser();
-        Folder folder = folderId != null ? folderRepository.findById(folderId).orElse(null) : null;
+        if (size == null || size < 0) {
+            throw new RuntimeException("File size is required");
+        }
+        remoteUrlPolicy.check(url);
+        Folder folder = findWritableFolder(user, folderId);
         File file = File.builder()
                 .user(user)
                 .name(name)
@@ -190,82 +230,225 @@ public class FileService {
                 .deleted(false)
                 .folder(folder)
                 .build();
+        usageService.checkQuota(user, size);
         fileRepository.save(file);
+        usageService.filesAdded(user, List.of(file));
         return toResponse(file);
     }
 
     // User-specific methods for controller
-    public List<FileResponse> listFilesByUser(User user, Optional<Long> folderId) {
-        List<File> files;
-        if (folderId.isPresent()) {
-            Folder folder = folderRepository.findById(folderId.get()).orElse(null);
-            files = fileRepository.findAllByFolder(folder);
-        } else {
-            files = fileRepository.findAllByUser(user);
+
+    /**
+     * Lists one page of the user's non-deleted files, optionally within a folder. Pages are
+     * addressed by an opaque cursor returned with the previous page rather than by offset. Without a
+     * limit or cursor every file is returned, as before pagination existed, still read page by page.
+     */
+    public FilePageResponse listFilesByUser(User user, Optional<Long> folderId, String sort, String order, String cursor, Integer limit) {
+        if (limit == null && (cursor == null || cursor.isEmpty())) {
+            List<FileResponse> all = new ArrayList<>();
+            String next = null;
+            do {
+                FilePageResponse page = listFilesByUser(user, folderId, sort, order, next, MAX_PAGE_SIZE);
+                all.addAll(page.getItems());
+                next = page.getNextCursor();
+            } while (next != null);
+            return new FilePageResponse(all, null);
         }
-        return files.stream().map(this::toResponse).collect(Collectors.toList());
+        String sortField = FileListQuery.SORT_NAME.equalsIgnoreCase(sort) ? FileListQuery.SORT_NAME : FileListQuery.SORT_CREATED_AT;
+        boolean ascending = order != null
+                ? "asc".equalsIgnoreCase(order)
+                : FileListQuery.SORT_NAME.equals(sortField);
+        int pageSize = limit == null || limit <= 0 ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+
+        FileListQuery.FileListQueryBuilder query = FileListQuery.builder()
+                .user(user)
+                .folderId(folderId.orElse(null))
+                .deleted(false)
+                .sort(sortField)
+                .ascending(ascending)
+                .limit(pageSize + 1);
+        if (cursor != null && !cursor.isEmpty()) {
+            decodeCursor(cursor, sortField, query);
+        }
+        List<FileResponse> files = fileRepository.findPage(query.build());
+
+        String nextCursor = null;
+        if (files.size() > pageSize) {
+            files = files.subList(0, pageSize);
+            nextCursor = encodeCursor(files.get(pageSize - 1), sortField);
+        }
+        return new FilePageResponse(files, nextCursor);
     }
 
-    @Transactional
-    public List<FileResponse> uploadFilesForUser(User user, MultipartFile[] files, Optional<Long> folderId) throws IOException {
-        List<FileResponse> responses = new java.util.ArrayList<>();
-        for (MultipartFile file : files) {
-            responses.add(uploadFileForUser(user, file, folderId));
+    static String encodeCursor(FileResponse last, String sortField) {
+        String value = FileListQuery.SORT_NAME.equals(sortField) ? last.getName() : last.getCreatedAt().toString();
+        String raw = last.getId() + ":" + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static void decodeCursor(String cursor, String sortField, FileListQuery.FileListQueryBuilder query) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            query.cursorId(Long.valueOf(raw.substring(0, separator)));
+            String value = raw.substring(separator + 1);
+            query.cursorValue(FileListQuery.SORT_NAME.equals(sortField) ? value : LocalDateTime.parse(value));
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Invalid cursor");
         }
-        return responses;
     }
 
+    /**
+     * Stores several uploaded files. Bodies are written and hashed concurrently on the upload workers
+     * with no transaction open; each blob then takes its reference in a short transaction of its own.
+     * The file rows and the usage counters are written together in one transaction once every body
+     * is durable. With {@code partial}, a file that fails to store is reported in the response without
+     * failing the others; otherwise any failure fails the whole upload and no file is recorded.
+     */
+    public UploadFilesResponse uploadFilesForUser(User user, MultipartFile[] files, Optional<Long> folderId,
+                                                  List<String> contentHashes, boolean partial) throws IOException {
+        Folder folder = findWritableFolder(user, folderId.orElse(null));
+        long incomingBytes = 0;
+        for (MultipartFile multipartFile : files) {
+            incomingBytes += multipartFile.getSize();
+        }
+        usageService.checkQuota(user, incomingBytes);
+        List<CompletableFuture<StoredBlob>> pending = new ArrayList<>(files.length);
+        for (int i = 0; i < files.length; i++) {
+            MultipartFile multipartFile = files[i];
+            String expectedHash = contentHashes != null && i < contentHashes.size() ? contentHashes.get(i) : null;
+            pending.add(CompletableFuture.supplyAsync(() -> {
+                Timer.Sample sample = transferMetrics.uploadStarted();
+                boolean succeeded = false;
+                try {
+                    StoredBlob blob = blobStore.store(multipartFile, expectedHash);
+                    succeeded = true;
+                    return blob;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    transferMetrics.uploadFinished(sample, "multipart", succeeded, multipartFile.getSize());
+                }
+            }, uploadExecutor));
+        }
+
+        List<File> stored = new ArrayList<>(files.length);
+        List<UploadFilesResponse.Failure> failures = new ArrayList<>();
+        for (int i = 0; i < files.length; i++) {
+            try {
+                StoredBlob blob = pending.get(i).join();
+                stored.add(File.builder()
+                        .user(user)
+                        .name(files[i].getOriginalFilename())
+                        .path(blob.getPath() != null ? blob.getPath().toString() : null)
+                        .contentHash(blob.getHash())
+                        .storageBackend(blob.getBackend())
+                        .size(blob.getSize())
+                        .favourite(false)
+                        .deleted(false)
+                        .folder(folder)
+                        .build());
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+                log.warn("Upload failed: name={}, user={}, error={}", files[i].getOriginalFilename(), user.getId(), cause.getMessage());
+                failures.add(new UploadFilesResponse.Failure(i, files[i].getOriginalFilename(), cause.getMessage()));
+            }
+        }
+
+        if (!partial && !failures.isEmpty()) {
+            stored.forEach(file -> blobStore.release(file.getContentHash()));
+            UploadFilesResponse.Failure failure = failures.get(0);
+            throw new RuntimeException("Upload failed: " + failure.getFileName() + ": " + failure.getError());
+        }
+        if (!stored.isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    fileRepository.insertAll(stored);
+                    usageService.filesAdded(user, stored);
+                });
+            } catch (RuntimeException e) {
+                stored.forEach(file -> blobStore.release(file.getContentHash()));
+                throw e;
+            }
+            fileNameIndex.invalidate(user.getId());
+            stored.forEach(thumbnailService::pregenerate);
+        }
+        return UploadFilesResponse.builder()
+                .files(stored.stream().map(this::toResponse).collect(Collectors.toList()))
+                .failures(failures)
+                .build();
+    }
+
+    // expectedHash is the client's SHA-256 of the content, if known; it lets duplicates skip the disk write
     @Transactional
-    public FileResponse uploadFileForUser(User user, MultipartFile multipartFile, Optional<Long> folderId) throws IOException {
-        Folder folder = folderId.flatMap(folderRepository::findById).orElse(null);
-        Path dirPath = Paths.get(uploadDir);
-        if (!Files.exists(dirPath)) {
-            Files.createDirectories(dirPath);
+    public FileResponse uploadFileForUser(User user, MultipartFile multipartFile, Optional<Long> folderId, String expectedHash) throws IOException {
+        Folder folder = findWritableFolder(user, folderId.orElse(null));
+        usageService.checkQuota(user, multipartFile.getSize());
+        Timer.Sample sample = transferMetrics.uploadStarted();
+        StoredBlob blob = null;
+        try {
+            blob = blobStore.store(multipartFile, expectedHash);
+        } finally {
+            transferMetrics.uploadFinished(sample, "single", blob != null, multipartFile.getSize());
         }
-        String fileName = System.currentTimeMillis() + "_" + multipartFile.getOriginalFilename();
-        Path filePath = dirPath.resolve(fileName);
-        try (FileOutputStream fos = new FileOutputStream(filePath.toFile())) {
-            fos.write(multipartFile.getBytes());
+        return createLocalFile(user, multipartFile.getOriginalFilename(), blob, folder);
+    }
+
+    /**
+     * The folder new or moved files go into: it must belong to the user and must not be deleted, or
+     * the background purge would remove the files along with it. {@code null} is the top level.
+     */
+    public Folder findWritableFolder(User user, Long folderId) {
+        if (folderId == null) {
+            return null;
         }
+        return folderRepository.findByIdAndUser(folderId, user)
+                .filter(folder -> !folder.isDeleted())
+                .orElseThrow(() -> new RuntimeException("Folder not found"));
+    }
+
+    // Records a file whose bytes are held by the blob store
+    @Transactional
+    public FileResponse createLocalFile(User user, String name, StoredBlob blob, Folder folder) {
         File file = File.builder()
                 .user(user)
-                .name(multipartFile.getOriginalFilename())
-                .path(filePath.toString())
-                .size(multipartFile.getSize())
+                .name(name)
+                .path(blob.getPath() != null ? blob.getPath().toString() : null)
+                .contentHash(blob.getHash())
+                .storageBackend(blob.getBackend())
+                .size(blob.getSize())
                 .favourite(false)
                 .deleted(false)
                 .folder(folder)
                 .build();
         fileRepository.save(file);
+        usageService.filesAdded(user, List.of(file));
+        fileNameIndex.invalidate(user.getId());
+        thumbnailService.pregenerate(file);
         return toResponse(file);
     }
 
-    public byte[] downloadFileByUser(User user, Long fileId) throws IOException {
+    public File getFileByUser(User user, Long fileId) {
+        return fileRepository.findByIdAndUser(fileId, user).orElseThrow(() -> new RuntimeException("File not found"));
+    }
+
+    // The caller closes the stream; content is never buffered whole in memory
+    public java.io.InputStream downloadFileByUser(User user, Long fileId) throws IOException {
         File file = fileRepository.findByIdAndUser(fileId, user).orElseThrow(() -> new RuntimeException("File not found"));
         
-        // If it's a cloud file (has URL), download from URL
+        // If it's a cloud file (has URL): objects of the local stand-in are read through its client,
+        // anything else only over HTTPS through the remote file cache, whatever scheme was stored
         if (file.getUrl() != null && !file.getUrl().isEmpty()) {
             try {
-                java.net.URL url = new java.net.URL(file.getUrl());
-                java.net.HttpURLConnection connection = (java.net.HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("GET");
-                
-                try (java.io.InputStream inputStream = connection.getInputStream();
-                     java.io.ByteArrayOutputStream outputStream = new java.io.ByteArrayOutputStream()) {
-                    byte[] buffer = new byte[4096];
-                    int bytesRead;
-                    while ((bytesRead = inputStream.read(buffer)) != -1) {
-                        outputStream.write(buffer, 0, bytesRead);
-                    }
-                    return outputStream.toByteArray();
-                }
+                Optional<java.nio.file.Path> local = cloudStorageClient.localPath(file.getUrl());
+                return local.isPresent() ? Files.newInputStream(local.get()) : remoteFileCache.open(file.getUrl()).inputStream();
             } catch (Exception e) {
                 throw new IOException("Failed to download file from URL: " + e.getMessage());
             }
         }
         
-        // For local files, read from path
-        return Files.readAllBytes(Paths.get(file.getPath()));
+        // For local files, read from the storage backend
+        return openStoredContent(file);
     }
 
     public String getDownloadUrlByUser(User user, Long fileId) {
@@ -284,9 +467,12 @@ public class FileService {
     @Transactional
     public void deleteFileByUser(User user, Long fileId) {
         File file = fileRepository.findByIdAndUser(fileId, user).orElseThrow(() -> new RuntimeException("File not found"));
+        usageService.deletedChanged(List.of(FileUsage.of(file)), true);
         file.setDeleted(true);
+        file.setDeletedAt(LocalDateTime.now());
         fileRepository.save(file);
-        System.out.println("[DEBUG] Marked file as deleted: id=" + file.getId() + ", name=" + file.getName() + ", user=" + user.getEmail());
+        fileNameIndex.invalidate(user.getId());
+        log.debug("Marked file as deleted: id={}, user={}", file.getId(), user.getId());
     }
 
     @Transactional
@@ -294,6 +480,7 @@ public class FileService {
         File file = fileRepository.findByIdAndUser(fileId, user).orElseThrow(() -> new RuntimeException("File not found"));
         file.setName(request.getNewName());
         fileRepository.save(file);
+        fileNameIndex.invalidate(user.getId());
         return toResponse(file);
     }
 
@@ -308,41 +495,177 @@ public class FileService {
     @Transactional
     public void restoreFileByUser(User user, Long fileId) {
         File file = fileRepository.findByIdAndUser(fileId, user).orElseThrow(() -> new RuntimeException("File not found"));
+        usageService.deletedChanged(List.of(FileUsage.of(file)), false);
         file.setDeleted(false);
+        file.setDeletedAt(null);
+        // Its folder has been deleted and is being purged, so the file comes back at the top level
+        if (file.getFolder() != null && file.getFolder().isDeleted()) {
+            usageService.filesMoved(List.of(FileUsage.of(file)), null);
+            file.setFolder(null);
+        }
         fileRepository.save(file);
-        System.out.println("[DEBUG] Restored file: id=" + file.getId() + ", name=" + file.getName() + ", user=" + user.getEmail());
+        fileNameIndex.invalidate(user.getId());
+        log.debug("Restored file: id={}, user={}", file.getId(), user.getId());
     }
 
     public List<FileResponse> listDeletedFilesByUser(User user, Optional<Long> folderId) {
-        List<File> files;
-        if (folderId.isPresent()) {
-            Folder folder = folderRepository.findById(folderId.get()).orElse(null);
-            files = fileRepository.findAllByFolderAndDeletedTrue(folder);
-        } else {
-            files = fileRepository.findAllByUserAndDeletedTrue(user);
-        }
-        System.out.println("[DEBUG] Deleted files for user " + user.getEmail() + ": " + files);
-        return files.stream().map(this::toResponse).collect(Collectors.toList());
+        List<FileResponse> files = folderId.isPresent()
+                ? fileRepository.findDeletedResponsesInFolder(user, folderId.get())
+                : fileRepository.findDeletedResponses(user);
+        log.debug("Listed {} deleted files for user {}", files.size(), user.getId());
+        return files;
     }
 
     @Transactional
     public void permanentlyDeleteFileByUser(User user, Long fileId) {
         File file = fileRepository.findByIdAndUser(fileId, user).orElseThrow(() -> new RuntimeException("File not found"));
+        compressionJobRepository.deleteAllByFile(file);
+        thumbnailService.deleteForFile(file);
+        usageService.filesRemoved(List.of(FileUsage.of(file)));
         fileRepository.delete(file);
+        if (file.getContentHash() != null) {
+            blobStore.release(file.getContentHash());
+        }
+        fileNameIndex.invalidate(user.getId());
     }
 
-    public List<FileResponse> searchFilesByNameForUser(User user, String query) {
-        List<File> files = fileRepository.findAllByUser(user);
-        String lowerQuery = query.toLowerCase();
-        return files.stream()
-            .filter(f -> f.getName() != null && f.getName().toLowerCase().contains(lowerQuery))
-            .map(this::toResponse)
-            .collect(java.util.stream.Collectors.toList());
+    /**
+     * Applies one operation to many files with a few set-based statements instead of one
+     * load-and-save per file. Ids that do not exist or belong to another user are reported as
+     * NOT_FOUND, files a DELETE or RESTORE finds already in that state as UNCHANGED; the rest are
+     * updated in a single transaction.
+     */
+    @Transactional
+    public BatchFileResponse batchUpdateByUser(User user, BatchFileRequest request) {
+        if (request.getOperation() == null) {
+            throw new RuntimeException("Batch operation is required");
+        }
+        List<Long> requested = request.getIds() != null ? request.getIds() : List.of();
+        Set<Long> ids = new LinkedHashSet<>(requested);
+        ids.remove(null);
+        if (ids.size() > MAX_BATCH_SIZE) {
+            throw new RuntimeException("At most " + MAX_BATCH_SIZE + " files can be changed at once");
+        }
+
+        Set<Long> owned = ids.isEmpty() ? Set.of() : new HashSet<>(fileRepository.findOwnedIds(user, ids));
+        // Owned files already in the requested trash state; reported as UNCHANGED and left alone
+        Set<Long> unchanged = new HashSet<>();
+        if (!owned.isEmpty()) {
+            LocalDateTime now = LocalDateTime.now();
+            switch (request.getOperation()) {
+                case DELETE -> {
+                    List<Long> changing = lockToChangeDeleted(user, owned, true, unchanged);
+                    if (!changing.isEmpty()) {
+                        usageService.deletedChanged(fileRepository.summarize(changing), true);
+                        fileRepository.setDeleted(user, changing, true, now, now);
+                    }
+                }
+                case RESTORE -> {
+                    List<Long> changing = lockToChangeDeleted(user, owned, false, unchanged);
+                    if (!changing.isEmpty()) {
+                        usageService.deletedChanged(fileRepository.summarize(changing), false);
+                        fileRepository.setDeleted(user, changing, false, null, now);
+                        List<Long> orphaned = fileRepository.findIdsInDeletedFolders(changing);
+                        if (!orphaned.isEmpty()) {
+                            usageService.filesMoved(fileRepository.summarize(orphaned), null);
+                            fileRepository.moveToTopLevel(orphaned, now);
+                        }
+                    }
+                }
+                case FAVOURITE -> fileRepository.setFavourite(user, owned, true, now);
+                case UNFAVOURITE -> fileRepository.setFavourite(user, owned, false, now);
+                case MOVE -> {
+                    Folder folder = findWritableFolder(user, request.getFolderId());
+                    usageService.filesMoved(fileRepository.summarize(owned), folder != null ? folder.getId() : null);
+                    fileRepository.moveToFolder(user, owned, folder, now);
+                }
+                case PERMANENT_DELETE -> purgeFiles(owned);
+            }
+            if (request.getOperation() != BatchFileRequest.Operation.FAVOURITE
+                    && request.getOperation() != BatchFileRequest.Operation.UNFAVOURITE) {
+                fileNameIndex.invalidate(user.getId());
+            }
+        }
+
+        List<BatchFileResponse.Result> results = new ArrayList<>(requested.size());
+        for (Long id : requested) {
+            String status = !owned.contains(id) ? "NOT_FOUND" : unchanged.contains(id) ? "UNCHANGED" : "OK";
+            results.add(new BatchFileResponse.Result(id, status));
+        }
+        int succeeded = (int) results.stream().filter(r -> "OK".equals(r.getStatus())).count();
+        int failed = (int) results.stream().filter(r -> "NOT_FOUND".equals(r.getStatus())).count();
+        log.debug("Batch {} on {} files for user {}: {} updated", request.getOperation(), requested.size(),
+                user.getId(), owned.size());
+        return BatchFileResponse.builder()
+                .operation(request.getOperation().name())
+                .succeeded(succeeded)
+                .unchanged(results.size() - succeeded - failed)
+                .failed(failed)
+                .results(results)
+                .build();
+    }
+
+    // Locks the files that will change trash state and collects the rest of owned into unchanged
+    private List<Long> lockToChangeDeleted(User user, Set<Long> owned, boolean deleted, Set<Long> unchanged) {
+        List<Long> changing = fileRepository.lockToChangeDeleted(user.getId(), owned, deleted);
+        unchanged.addAll(owned);
+        changing.forEach(unchanged::remove);
+        return changing;
+    }
+
+    // One bounded batch of the background purge of deleted folders; returns the number of files removed
+    // or moved out. Files that are not in the trash themselves are kept and moved to the top level
+    @Transactional
+    public int purgeFilesInDeletedFolders(int limit) {
+        List<Long> ids = fileRepository.lockFilesInDeletedFolders(limit);
+        if (!ids.isEmpty()) {
+            purgeFiles(ids);
+        }
+        List<Long> live = fileRepository.lockLiveFilesInDeletedFolders(limit);
+        if (!live.isEmpty()) {
+            usageService.filesMoved(fileRepository.summarize(live), null);
+            fileRepository.moveToTopLevel(live, LocalDateTime.now());
+            log.info("moved files out of deleted folders count={}", live.size());
+        }
+        return ids.size() + live.size();
+    }
+
+    public record PurgeResult(int files, long reclaimedBytes) {
+    }
+
+    // One bounded batch of the trash reaper: purges files that have been in the trash since before cutoff
+    @Transactional
+    public PurgeResult purgeExpiredTrash(LocalDateTime cutoff, int limit) {
+        List<Long> ids = fileRepository.lockExpiredTrash(cutoff, limit);
+        if (ids.isEmpty()) {
+            return new PurgeResult(0, 0);
+        }
+        return new PurgeResult(ids.size(), purgeFiles(ids));
+    }
+
+    // Deletes file rows together with their jobs and thumbnails, then drops their blob references;
+    // returns the bytes freed in storage
+    private long purgeFiles(Collection<Long> ids) {
+        List<String> hashes = fileRepository.findContentHashesByIds(ids);
+        usageService.filesRemoved(fileRepository.summarize(ids));
+        compressionJobRepository.deleteAllByFileIds(ids);
+        thumbnailService.deleteForFiles(ids);
+        fileRepository.deleteAllByIds(ids);
+        // One release per file: files with identical content share a blob reference count
+        long reclaimed = 0;
+        for (String hash : hashes) {
+            reclaimed += blobStore.release(hash);
+        }
+        return reclaimed;
     }
 
     @Transactional
     public FileResponse registerCloudFileForUser(User user, String name, String url, Long size, String type, Long folderId) {
-        Folder folder = folderId != null ? folderRepository.findById(folderId).orElse(null) : null;
+        if (size == null || size < 0) {
+            throw new RuntimeException("File size is required");
+        }
+        remoteUrlPolicy.check(url);
+        Folder folder = findWritableFolder(user, folderId);
         
         File file = File.builder()
                 .user(user)
@@ -355,7 +678,10 @@ public class FileService {
                 .folder(folder)
                 .build();
         
+        usageService.checkQuota(user, size);
         File savedFile = fileRepository.save(file);
+        usageService.filesAdded(user, List.of(savedFile));
+        fileNameIndex.invalidate(user.getId());
         return toResponse(savedFile);
     }
 
@@ -365,118 +691,186 @@ public class FileService {
             .orElse(null);
     }
 
-    private Cloudinary getCloudinary() {
-        if (cloudinaryUrl != null && !cloudinaryUrl.isEmpty()) {
-            return new Cloudinary(cloudinaryUrl);
-        }
-        // fallback to explicit config if env var is not set
-        return new Cloudinary(ObjectUtils.asMap(
-            "cloud_name", "ds5gugfv0",
-            "api_key", "735146938571227",
-            "api_secret", "ywd7M8seRHCTf4YG6liBeN8Bw3E"
-        ));
-    }
-
-    public CompressionResponse compressFile(User user, Long fileId, CompressionRequest request) {
+    /**
+     * Called from the compression workers; progress receives 0.0 - 1.0 as the stages complete.
+     * {@code onSaved} runs in the transaction that inserts the result row and may throw to refuse it
+     * (the job was cancelled or taken over meanwhile); the row is then rolled back and the uploaded
+     * output deleted again.
+     */
+    public CompressionResponse compressFile(User user, Long fileId, CompressionRequest request, DoubleConsumer progress,
+                                            Consumer<CompressionResponse> onSaved) {
         File originalFile = fileRepository.findByIdAndUser(fileId, user)
                 .orElseThrow(() -> new RuntimeException("File not found"));
         String originalName = originalFile.getName();
         String extension = originalName.contains(".") ? originalName.substring(originalName.lastIndexOf('.') + 1).toLowerCase() : "";
         String type = request.getType();
         try {
-            byte[] fileData = downloadFileByUser(user, fileId);
+            if ("video".equalsIgnoreCase(type)) {
+                return compressVideo(user, originalFile, request, progress, onSaved);
+            }
+            if (!"image".equalsIgnoreCase(type) && !"archive".equalsIgnoreCase(type)) {
+                throw new RuntimeException("Unsupported compression type");
+            }
             byte[] compressedData;
             String compressedName;
             String format = request.getFormat();
             float quality = request.getQuality() != null ? request.getQuality() : 0.7f;
-            int bitrate = request.getBitrate() != null ? request.getBitrate() : 1000; // kbps default
-            if ("image".equalsIgnoreCase(type)) {
-                String usedFormat = (format != null && !format.isEmpty()) ? format : extension;
-                int dotIndex = originalName.lastIndexOf('.');
-                if (dotIndex != -1) {
-                    compressedName = originalName.substring(0, dotIndex) + "_compressed." + usedFormat;
-                } else {
-                    compressedName = originalName + "_compressed." + usedFormat;
-                }
-                java.io.ByteArrayInputStream bais = new java.io.ByteArrayInputStream(fileData);
-                java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-                net.coobird.thumbnailator.Thumbnails.of(bais)
-                    .scale(1.0)
-                    .outputQuality(quality)
-                    .outputFormat(usedFormat)
-                    .toOutputStream(baos);
-                compressedData = baos.toByteArray();
-                format = usedFormat;
-            } else if ("video".equalsIgnoreCase(type)) {
-                String usedFormat = (format != null && !format.isEmpty()) ? format : extension;
-                int dotIndex = originalName.lastIndexOf('.');
-                if (dotIndex != -1) {
-                    compressedName = originalName.substring(0, dotIndex) + "_compressed." + usedFormat;
-                } else {
-                    compressedName = originalName + "_compressed." + usedFormat;
-                }
-                java.nio.file.Path tempInput = java.nio.file.Files.createTempFile("video_input", "." + extension);
-                java.nio.file.Path tempOutput = java.nio.file.Files.createTempFile("video_output", "." + usedFormat);
-                java.nio.file.Files.write(tempInput, fileData);
-                String bitrateStr = bitrate + "k";
-                ProcessBuilder pb = new ProcessBuilder(
-                    "ffmpeg", "-y", "-i", tempInput.toString(), "-b:v", bitrateStr, tempOutput.toString()
-                );
-                pb.redirectErrorStream(true);
-                Process process = pb.start();
-                process.waitFor();
-                compressedData = java.nio.file.Files.readAllBytes(tempOutput);
-                java.nio.file.Files.deleteIfExists(tempInput);
-                java.nio.file.Files.deleteIfExists(tempOutput);
-                format = usedFormat;
-            } else if ("archive".equalsIgnoreCase(type)) {
-                int dotIndex = originalName.lastIndexOf('.');
-                if (dotIndex != -1) {
-                    compressedName = originalName.substring(0, dotIndex) + "_compressed.zip";
+            try (java.io.InputStream fileData = downloadFileByUser(user, fileId)) {
+                progress.accept(0.1);
+                if ("image".equalsIgnoreCase(type)) {
+                    String usedFormat = (format != null && !format.isEmpty()) ? format : extension;
+                    compressedName = compressedName(originalName, usedFormat);
+                    java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
+                    net.coobird.thumbnailator.Thumbnails.of(fileData)
+                        .scale(1.0)
+                        .outputQuality(quality)
+                        .outputFormat(usedFormat)
+                        .toOutputStream(baos);
+                    compressedData = baos.toByteArray();
+                    format = usedFormat;
                 } else {
-                    compressedName = originalName + "_compressed.zip";
+                    compressedName = compressedName(originalName, "zip");
+                    java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
+                    java.util.zip.ZipOutputStream zos = new java.util.zip.ZipOutputStream(baos);
+                    zos.putNextEntry(new java.util.zip.ZipEntry(originalName));
+                    fileData.transferTo(zos);
+                    zos.closeEntry();
+                    zos.close();
+                    compressedData = baos.toByteArray();
+                    format = "zip";
                 }
-                java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-                java.util.zip.ZipOutputStream zos = new java.util.zip.ZipOutputStream(baos);
-                zos.putNextEntry(new java.util.zip.ZipEntry(originalName));
-                zos.write(fileData);
-                zos.closeEntry();
-                zos.close();
-                compressedData = baos.toByteArray();
-                format = "zip";
-            } else {
-                throw new RuntimeException("Unsupported compression type");
             }
-            // Upload compressed file to Cloudinary
-            Cloudinary cloudinary = getCloudinary();
-            java.util.Map uploadResult = cloudinary.uploader().upload(compressedData, ObjectUtils.asMap(
-                "resource_type", "auto",
-                "public_id", compressedName
-            ));
-            String fileUrl = (String) uploadResult.get("secure_url");
-            File compressedFile = File.builder()
-                    .user(user)
-                    .name(compressedName)
-                    .url(fileUrl)
-                    .size((long) compressedData.length)
-                    .favourite(false)
-                    .deleted(false)
-                    .folder(originalFile.getFolder())
-                    .path(null)
-                    .build();
-            fileRepository.save(compressedFile);
-            double compressionRatio = ((double) (originalFile.getSize() - compressedData.length) / originalFile.getSize()) * 100;
-            return CompressionResponse.builder()
-                    .id(compressedFile.getId())
-                    .name(compressedFile.getName())
-                    .url(compressedFile.getUrl())
-                    .originalSize(originalFile.getSize())
-                    .compressedSize(compressedFile.getSize())
-                    .compressionRatio(compressionRatio)
-                    .format(format)
-                    .build();
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("Compression cancelled");
+            }
+            progress.accept(0.7);
+            // Upload compressed file to cloud storage; a concrete resource type so a refused result can be deleted
+            String resourceType = "image".equalsIgnoreCase(type) ? "image" : "raw";
+            String publicId = publicIdFor(compressedName);
+            CloudUpload upload = cloudStorageClient.upload(compressedData, publicId, resourceType);
+            CompressionResponse response = saveCompressedFile(user, originalFile, compressedName, publicId, resourceType,
+                    upload.getUrl(), compressedData.length, format, onSaved);
+            progress.accept(1.0);
+            return response;
         } catch (Exception e) {
             throw new RuntimeException("Compression failed: " + e.getMessage());
         }
     }
+
+    // ffmpeg reads the source straight from disk (or its URL) and its output is uploaded as it is
+    // produced, so memory use stays flat however long the video is
+    private CompressionResponse compressVideo(User user, File originalFile, CompressionRequest request,
+                                              DoubleConsumer progress, Consumer<CompressionResponse> onSaved)
+            throws IOException, InterruptedException {
+        String originalName = originalFile.getName();
+        String extension = originalName.contains(".") ? originalName.substring(originalName.lastIndexOf('.') + 1).toLowerCase() : "";
+        String format = VideoTranscoder.outputFormat(request.getFormat(), extension);
+        String compressedName = compressedName(originalName, format);
+        String publicId = publicIdFor(compressedName);
+        String input;
+        java.io.InputStream stdin = null;
+        if (originalFile.getUrl() != null && !originalFile.getUrl().isEmpty()) {
+            // Never hand ffmpeg a stored URL the download path would refuse
+            Optional<java.nio.file.Path> local = cloudStorageClient.localPath(originalFile.getUrl());
+            if (local.isPresent()) {
+                input = "file:" + local.get();
+            } else {
+                remoteUrlPolicy.check(originalFile.getUrl());
+                input = originalFile.getUrl();
+            }
+        } else if (originalFile.getContentHash() == null) {
+            input = "file:" + Paths.get(originalFile.getPath()).toAbsolutePath();
+        } else {
+            StorageBackend backend = storageBackendRegistry.get(originalFile.getStorageBackend());
+            Optional<java.nio.file.Path> local = backend.localPath(originalFile.getContentHash());
+            if (local.isPresent()) {
+                input = "file:" + local.get().toAbsolutePath();
+            } else {
+                input = null;
+                stdin = backend.get(originalFile.getContentHash());
+            }
+        }
+        CloudUpload[] uploaded = {null};
+        VideoTranscoder.Result<CloudUpload> result;
+        try {
+            result = videoTranscoder.transcode(input, stdin, format,
+                    request.getCrf(), request.getBitrate(), request.getResolution(),
+                    p -> progress.accept(0.05 + p * 0.9),
+                    output -> uploaded[0] = cloudStorageClient.upload(output, publicId, "video"));
+        } catch (IOException | InterruptedException e) {
+            // The upload completes when ffmpeg's output ends, even if ffmpeg then reports failure
+            if (uploaded[0] != null) {
+                try {
+                    cloudStorageClient.delete(publicId, "video");
+                } catch (IOException cleanup) {
+                    log.warn("could not delete failed transcode output publicId={} error={}", publicId, cleanup.getMessage());
+                }
+            }
+            throw e;
+        }
+        CompressionResponse response = saveCompressedFile(user, originalFile, compressedName, publicId, "video",
+                result.getValue().getUrl(), result.getSize(), format, onSaved);
+        progress.accept(1.0);
+        return response;
+    }
+
+    // Unique per run, so a retried or duplicate job never overwrites (or deletes) another run's output
+    private static String publicIdFor(String compressedName) {
+        return UUID.randomUUID() + "_" + compressedName;
+    }
+
+    private static String compressedName(String originalName, String format) {
+        int dotIndex = originalName.lastIndexOf('.');
+        if (dotIndex != -1) {
+            return originalName.substring(0, dotIndex) + "_compressed." + format;
+        }
+        return originalName + "_compressed." + format;
+    }
+
+    private CompressionResponse saveCompressedFile(User user, File originalFile, String compressedName, String publicId,
+                                                   String resourceType,
+                                                   String fileUrl, long compressedSize, String format,
+                                                   Consumer<CompressionResponse> onSaved) {
+        try {
+            return transactionTemplate.execute(status -> {
+                // Never into a deleted folder, which the purge would empty along with it. Workers hold the original
+                // detached, so its folder is re-read rather than initialised through the lazy proxy
+                Folder folder = originalFile.getFolder() != null
+                        ? folderRepository.findById(originalFile.getFolder().getId()).filter(f -> !f.isDeleted()).orElse(null)
+                        : null;
+                File compressedFile = File.builder()
+                        .user(user)
+                        .name(compressedName)
+                        .url(fileUrl)
+                        .size(compressedSize)
+                        .favourite(false)
+                        .deleted(false)
+                        .folder(folder)
+                        .path(null)
+                        .build();
+                fileRepository.save(compressedFile);
+                usageService.filesAdded(user, List.of(compressedFile));
+                fileNameIndex.invalidate(user.getId());
+                double compressionRatio = ((double) (originalFile.getSize() - compressedSize) / originalFile.getSize()) * 100;
+                CompressionResponse response = CompressionResponse.builder()
+                        .id(compressedFile.getId())
+                        .name(compressedFile.getName())
+                        .url(compressedFile.getUrl())
+                        .originalSize(originalFile.getSize())
+                        .compressedSize(compressedFile.getSize())
+                        .compressionRatio(compressionRatio)
+                        .format(format)
+                        .build();
+                onSaved.accept(response);
+                return response;
+            });
+        } catch (RuntimeException e) {
+            try {
+                cloudStorageClient.delete(publicId, resourceType);
+            } catch (IOException cleanup) {
+                log.warn("could not delete discarded compression output publicId={} error={}", publicId, cleanup.getMessage());
+            }
+            throw e;
+        }
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,43 @@
+package com.cloudstore.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Background purge of deleted folder subtrees. Files are removed first, then the emptied folders
+ * leaves-first, each batch in its own short transaction so a huge subtree never holds locks for
+ * long. Batches are claimed with {@code FOR UPDATE SKIP LOCKED}, so every node can run the purge.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FolderPurgeService {
+    private final FileService fileService;
+    private final FolderService folderService;
+
+    @Value("${folder.purge.batch-size:500}")
+    private int batchSize;
+
+    @Scheduled(fixedDelayString = "${folder.purge.interval:PT1M}")
+    public void purgeDeletedFolders() {
+        long files = 0;
+        long folders = 0;
+        try {
+            int purged;
+            while ((purged = fileService.purgeFilesInDeletedFolders(batchSize)) > 0) {
+                files += purged;
+            }
+            while ((purged = folderService.purgeEmptyDeletedFolders(batchSize)) > 0) {
+                folders += purged;
+            }
+        } catch (RuntimeException e) {
+            log.warn("folder purge failed, retrying next run error={}", e.getMessage());
+        }
+        if (files > 0 || folders > 0) {
+            log.info("purged deleted folders folders={} files={}", folders, files);
+        }
+    }
+}
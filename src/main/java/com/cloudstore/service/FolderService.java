@@ -2,25 +2,45 @@ package com.cloudstore.service;
 
 import com.cloudstore.dto.CreateFolderRequest;
 import com.cloudstore.dto.FolderResponse;
+import com.cloudstore.dto.FolderSizeResponse;
+import com.cloudstore.dto.FolderTreeNode;
 import com.cloudstore.model.Folder;
 import com.cloudstore.model.User;
+import com.cloudstore.repository.FileRepository;
 import com.cloudstore.repository.FolderRepository;
+import com.cloudstore.repository.FolderTreeRow;
 import com.cloudstore.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class FolderService {
+    private static final int MAX_TREE_DEPTH = 64;
+
     private final FolderRepository folderRepository;
+    private final FileRepository fileRepository;
     private final UserRepository userRepository;
+    private final FileNameIndex fileNameIndex;
+    private final UsageService usageService;
+    private final JdbcTemplate jdbcTemplate;
 
     private User getCurrentUser() {
         Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
@@ -34,45 +54,251 @@ public class FolderService {
 
     public List<FolderResponse> listFolders(Optional<Long> parentId) {
         User user = getCurrentUser();
-        List<Folder> folders;
         if (parentId.isPresent()) {
-            Folder parent = folderRepository.findById(parentId.get()).orElse(null);
-            folders = folderRepository.findAllByParent(parent);
-        } else {
-            folders = folderRepository.findAllByUser(user);
+            return folderRepository.findResponsesByParent(user, parentId.get());
+        }
+        return folderRepository.findResponsesByUser(user);
+    }
+
+    /**
+     * Returns the folder hierarchy below {@code rootId} (or every top-level folder) as nested nodes,
+     * at most {@code maxDepth} levels deep, with file counts and sizes per folder and per subtree.
+     * One recursive query fetches the rows; they are assembled into the tree in a single pass.
+     */
+    public List<FolderTreeNode> getFolderTree(Optional<Long> rootId, Optional<Integer> maxDepth) {
+        User user = getCurrentUser();
+        int depth = Math.min(Math.max(maxDepth.orElse(MAX_TREE_DEPTH), 0), MAX_TREE_DEPTH);
+        List<FolderTreeRow> rows = rootId.isPresent()
+                ? folderRepository.findSubtree(user.getId(), rootId.get(), depth)
+                : folderRepository.findTree(user.getId(), depth);
+        if (rootId.isPresent() && rows.isEmpty()) {
+            throw new RuntimeException("Folder not found");
         }
-        return folders.stream().map(this::toResponse).collect(Collectors.toList());
+
+        // Rows come parents-first (ordered by depth), so every parent is already mapped
+        Map<Long, FolderTreeNode> nodes = new HashMap<>(rows.size() * 2);
+        List<FolderTreeNode> ordered = new ArrayList<>(rows.size());
+        List<FolderTreeNode> parents = new ArrayList<>(rows.size());
+        List<FolderTreeNode> roots = new ArrayList<>();
+        for (FolderTreeRow row : rows) {
+            FolderTreeNode node = new FolderTreeNode();
+            node.setId(row.getId());
+            node.setName(row.getName());
+            node.setParentId(row.getParentId());
+            node.setCreatedAt(row.getCreatedAt());
+            node.setUpdatedAt(row.getUpdatedAt());
+            node.setFileCount(row.getFileCount());
+            node.setTotalSize(row.getTotalSize());
+            node.setSubtreeFileCount(row.getFileCount());
+            node.setSubtreeSize(row.getTotalSize());
+            FolderTreeNode parent = row.getDepth() > 0 ? nodes.get(row.getParentId()) : null;
+            if (parent != null) {
+                parent.getChildren().add(node);
+            } else {
+                roots.add(node);
+            }
+            nodes.put(node.getId(), node);
+            ordered.add(node);
+            parents.add(parent);
+        }
+        // Children-first, so each subtree total is complete before it is added to its parent
+        for (int i = ordered.size() - 1; i >= 0; i--) {
+            FolderTreeNode node = ordered.get(i);
+            FolderTreeNode parent = parents.get(i);
+            if (parent != null) {
+                parent.setSubtreeFileCount(parent.getSubtreeFileCount() + node.getSubtreeFileCount());
+                parent.setSubtreeSize(parent.getSubtreeSize() + node.getSubtreeSize());
+            }
+        }
+        return roots;
     }
 
     @Transactional
     public FolderResponse createFolder(CreateFolderRequest request) {
         try {
             User user = getCurrentUser();
-            Folder parent = request.getParentId() != null ? folderRepository.findById(request.getParentId()).orElse(null) : null;
+            Folder parent = request.getParentId() != null
+                    ? lockActiveFolders(user, request.getParentId()).get(request.getParentId())
+                    : null;
             Folder folder = Folder.builder()
                     .user(user)
                     .name(request.getName())
                     .parent(parent)
                     .build();
             folderRepository.save(folder);
+            // The path ends with the folder's own id, which only exists once the row is inserted
+            folder.setPath(pathPrefix(parent) + folder.getId() + "/");
+            folder.setDepth(parent != null ? parent.getDepth() + 1 : 0);
             return toResponse(folder);
         } catch (Exception e) {
             throw new RuntimeException("Failed to create folder: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Moves a folder (with everything below it) under {@code parentId}, or to the top level. The
+     * cycle check and the rewrite of every descendant's path are one indexed query each.
+     */
+    @Transactional
+    public FolderResponse moveFolder(Long id, Long parentId) {
+        User user = getCurrentUser();
+        Map<Long, Folder> locked = lockActiveFolders(user, id, parentId);
+        Folder folder = locked.get(id);
+        Folder parent = parentId != null ? locked.get(parentId) : null;
+        String oldPrefix = folder.getPath();
+        if (parent != null && parent.getPath().startsWith(oldPrefix)) {
+            throw new RuntimeException("A folder cannot be moved into itself or one of its subfolders");
+        }
+        String newPrefix = pathPrefix(parent) + folder.getId() + "/";
+        int depthDelta = (parent != null ? parent.getDepth() + 1 : 0) - folder.getDepth();
+
+        folder.setParent(parent);
+        folderRepository.saveAndFlush(folder);
+        folderRepository.rewritePathPrefix(user, oldPrefix, oldPrefix.length(), newPrefix, depthDelta);
+        folder.setPath(newPrefix);
+        folder.setDepth(folder.getDepth() + depthDelta);
+        return toResponse(folder);
+    }
+
+    // Ancestors from the top level down to and including the folder itself
+    public List<FolderResponse> getBreadcrumbs(Long id) {
+        User user = getCurrentUser();
+        Folder folder = findActiveFolder(id, user);
+        return folderRepository.findResponsesByIdsOrderByDepth(user, pathIds(folder.getPath()));
+    }
+
+    // Every folder below this one, shallowest first
+    public List<FolderResponse> listDescendants(Long id) {
+        User user = getCurrentUser();
+        Folder folder = findActiveFolder(id, user);
+        return folderRepository.findDescendantResponses(user, folder.getPath());
+    }
+
+    public FolderSizeResponse getSubtreeSize(Long id) {
+        User user = getCurrentUser();
+        Folder folder = findActiveFolder(id, user);
+        return folderRepository.sumSubtree(user, folder.getPath());
+    }
+
+    // One bounded batch of the background purge: deletes emptied folders, deepest first
+    @Transactional
+    public int purgeEmptyDeletedFolders(int limit) {
+        List<Long> ids = folderRepository.lockEmptyDeletedFolders(limit);
+        if (!ids.isEmpty()) {
+            usageService.foldersRemoved(ids);
+            folderRepository.deleteAllByIds(ids);
+        }
+        return ids.size();
+    }
+
+    /**
+     * Creates the (user_id, path) index with varchar_pattern_ops, so the prefix LIKE of the subtree
+     * queries is an index range scan under any collation (mirrors db/migration/V11). An index of that
+     * name without the operator class, as earlier schema updates created it, or left invalid is replaced.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensurePathIndex() {
+        try {
+            List<Map<String, Object>> existing = jdbcTemplate.queryForList(
+                    "SELECT pg_get_indexdef(i.indexrelid) AS definition, i.indisvalid AS valid FROM pg_index i "
+                            + "JOIN pg_class c ON c.oid = i.indexrelid WHERE c.relname = 'idx_folders_user_path'");
+            // An interrupted concurrent build leaves an invalid index behind, which IF NOT EXISTS would keep
+            if (!existing.isEmpty() && (!Boolean.TRUE.equals(existing.get(0).get("valid"))
+                    || !String.valueOf(existing.get(0).get("definition")).contains("varchar_pattern_ops"))) {
+                jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS idx_folders_user_path");
+            }
+            jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_folders_user_path "
+                    + "ON folders (user_id, path varchar_pattern_ops)");
+        } catch (Exception e) {
+            log.warn("could not create folder path index, subtree queries will scan error={}", e.getMessage());
+        }
+    }
+
+    // Fills in paths for folders created before they were tracked
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillPaths() {
+        if (folderRepository.existsByPathIsNull()) {
+            int updated = folderRepository.rebuildPaths();
+            log.info("rebuilt folder paths count={}", updated);
+        }
+    }
+
+    private Folder findActiveFolder(Long id, User user) {
+        return folderRepository.findByIdAndUser(id, user)
+                .filter(folder -> !folder.isDeleted())
+                .orElseThrow(() -> new RuntimeException("Folder not found"));
+    }
+
+    /**
+     * Locks the given folders with all their ancestors and returns them by id. A move rewrites the
+     * path of its whole subtree, and that UPDATE would miss a child inserted under a folder it is
+     * waiting on, so creates, moves and deletes all lock the chain of ancestors first. The chain comes
+     * from a path read before the lock; if a move changed it meanwhile, the lock is taken again.
+     */
+    private Map<Long, Folder> lockActiveFolders(User user, Long... ids) {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            Map<Long, String> paths = new HashMap<>();
+            Set<Long> chain = new HashSet<>();
+            for (Long id : ids) {
+                if (id != null) {
+                    String path = folderRepository.findActivePath(id, user)
+                            .orElseThrow(() -> new RuntimeException("Folder not found"));
+                    paths.put(id, path);
+                    chain.addAll(pathIds(path));
+                }
+            }
+            Map<Long, Folder> locked = new HashMap<>();
+            for (Folder folder : folderRepository.lockAllByIds(user, chain)) {
+                locked.put(folder.getId(), folder);
+            }
+            boolean unchanged = paths.entrySet().stream().allMatch(entry -> {
+                Folder folder = locked.get(entry.getKey());
+                return folder != null && !folder.isDeleted() && entry.getValue().equals(folder.getPath());
+            });
+            if (unchanged) {
+                return locked;
+            }
+        }
+        throw new RuntimeException("Folder is being moved, try again");
+    }
+
+    private static String pathPrefix(Folder parent) {
+        return parent != null ? parent.getPath() : "/";
+    }
+
+    private static List<Long> pathIds(String path) {
+        List<Long> ids = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                ids.add(Long.valueOf(segment));
+            }
+        }
+        return ids;
+    }
+
     @Transactional
     public FolderResponse renameFolder(Long id, String newName) {
-        Folder folder = folderRepository.findById(id).orElseThrow(() -> new RuntimeException("Folder not found"));
+        Folder folder = findActiveFolder(id, getCurrentUser());
         folder.setName(newName);
         folderRepository.save(folder);
         return toResponse(folder);
     }
 
+    /**
+     * Deletes a folder with everything below it. The subtree and its files are only marked deleted
+     * here, with two set-based updates, so the request returns at once however large the subtree is;
+     * {@link FolderPurgeService} removes the rows and releases the stored bytes in bounded batches.
+     */
     @Transactional
     public void deleteFolder(Long id) {
-        Folder folder = folderRepository.findById(id).orElseThrow(() -> new RuntimeException("Folder not found"));
-        folderRepository.delete(folder);
+        User user = getCurrentUser();
+        Folder folder = lockActiveFolders(user, id).get(id);
+        LocalDateTime now = LocalDateTime.now();
+        usageService.deletedChanged(fileRepository.summarizeSubtree(user, folder.getPath()), true);
+        int folders = folderRepository.markSubtreeDeleted(user, folder.getPath(), now);
+        int files = fileRepository.markDeletedInSubtree(user, folder.getPath(), now);
+        fileNameIndex.invalidate(user.getId());
+        log.debug("Marked folder subtree deleted: id={}, folders={}, files={}", id, folders, files);
     }
 
     private FolderResponse toResponse(Folder folder) {
@@ -0,0 +1,564 @@
+package com.cloudstore.service;
+
+import com.cloudstore.model.StorageScanCheckpoint;
+import com.cloudstore.repository.BlobRepository;
+import com.cloudstore.repository.BlobScanRow;
+import com.cloudstore.repository.FileRepository;
+import com.cloudstore.repository.LegacyFileRow;
+import com.cloudstore.repository.StorageScanCheckpointRepository;
+import com.cloudstore.storage.ShardedLocalStorageBackend;
+import com.cloudstore.storage.StorageBackend;
+import com.cloudstore.storage.StorageBackendRegistry;
+import com.cloudstore.storage.TieredStorageBackend;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Keeps disk and database in agreement. Objects in a local backend with no blob row (an upload
+ * that died between writing and committing, bytes a failed delete left behind) and files in the
+ * upload directory no file row points at are moved to {@code storage.scan.quarantine-dir} once
+ * older than {@code storage.scan.grace}, and deleted from there after
+ * {@code storage.scan.quarantine-retention}. Blob rows and path-stored files whose bytes are gone
+ * get {@code missing_at} set, cleared again if the bytes reappear.
+ * <p>
+ * Backends are walked one two-character shard at a time, several shards in parallel, and each
+ * shard is diffed against a keyset scan of the same hash range, so memory is bounded by one shard
+ * however many blobs there are. A run covers {@code storage.scan.shards-per-run} shards per backend
+ * and {@code storage.scan.files-per-run} path-stored files, checkpointing as it goes, and the next
+ * run continues from there.
+ */
+@Slf4j
+@Service
+public class StorageConsistencyScanner {
+    private static final String BLOBS_SCOPE = "blobs:";
+    private static final String FILES_SCOPE = "files";
+    private static final String LEGACY_QUARANTINE = "legacy";
+    private static final String BLOB_TEMP_DIR = "tmp";
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final int SHARDS = 256;
+
+    private final StorageBackendRegistry storageBackendRegistry;
+    private final BlobRepository blobRepository;
+    private final FileRepository fileRepository;
+    private final StorageScanCheckpointRepository checkpointRepository;
+    private final boolean enabled;
+    private final int shardsPerRun;
+    private final int filesPerRun;
+    private final int batchSize;
+    private final Duration grace;
+    private final Duration quarantineRetention;
+    private final Path quarantineDir;
+    private final Path uploadDir;
+    private final ExecutorService executor;
+    private final Counter orphans;
+    private final Counter orphanBytes;
+    private final Counter missing;
+
+    public StorageConsistencyScanner(StorageBackendRegistry storageBackendRegistry,
+                                     BlobRepository blobRepository,
+                                     FileRepository fileRepository,
+                                     StorageScanCheckpointRepository checkpointRepository,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${storage.scan.enabled:true}") boolean enabled,
+                                     @Value("${storage.scan.parallelism:4}") int parallelism,
+                                     @Value("${storage.scan.shards-per-run:16}") int shardsPerRun,
+                                     @Value("${storage.scan.files-per-run:50000}") int filesPerRun,
+                                     @Value("${storage.scan.batch-size:1000}") int batchSize,
+                                     @Value("${storage.scan.grace:1h}") Duration grace,
+                                     @Value("${storage.scan.quarantine-retention:7d}") Duration quarantineRetention,
+                                     @Value("${storage.scan.quarantine-dir:uploads/quarantine}") String quarantineDir,
+                                     @Value("${file.upload-dir:uploads}") String uploadDir) {
+        this.storageBackendRegistry = storageBackendRegistry;
+        this.blobRepository = blobRepository;
+        this.fileRepository = fileRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.enabled = enabled;
+        this.shardsPerRun = Math.max(1, shardsPerRun);
+        this.filesPerRun = Math.max(1, filesPerRun);
+        this.batchSize = Math.max(1, batchSize);
+        this.grace = grace;
+        this.quarantineRetention = quarantineRetention;
+        this.quarantineDir = Paths.get(quarantineDir);
+        this.uploadDir = Paths.get(uploadDir);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread t = new Thread(r, "storage-scan-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.orphans = Counter.builder("cloudstore.storage.scan.orphans")
+                .description("Stored objects and files with no database row, moved to quarantine")
+                .register(meterRegistry);
+        this.orphanBytes = Counter.builder("cloudstore.storage.scan.orphan.bytes")
+                .description("Size of the orphans moved to quarantine")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.missing = Counter.builder("cloudstore.storage.scan.missing")
+                .description("Blob and file rows flagged because their bytes are missing")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${storage.scan.interval:PT10M}", initialDelayString = "${storage.scan.interval:PT10M}")
+    public void scan() {
+        if (!enabled) {
+            return;
+        }
+        for (StorageBackend backend : storageBackendRegistry.getAll()) {
+            List<ShardedLocalStorageBackend> tiers = localTiers(backend);
+            if (tiers.isEmpty()) {
+                continue; // nothing on local disk to walk
+            }
+            try {
+                scanBlobs(backend.getName(), tiers);
+            } catch (RuntimeException e) {
+                log.warn("blob scan failed, retrying next run backend={} error={}", backend.getName(), e.getMessage());
+            }
+        }
+        try {
+            scanFiles();
+        } catch (RuntimeException e) {
+            log.warn("file scan failed, retrying next run error={}", e.getMessage());
+        }
+        purgeQuarantine();
+    }
+
+    // Scans the next shards of one backend in parallel, checkpointing up to the first one that failed
+    private void scanBlobs(String backend, List<ShardedLocalStorageBackend> tiers) {
+        StorageScanCheckpoint checkpoint = checkpoint(BLOBS_SCOPE + backend);
+        int first = checkpoint.getPosition() == null ? 0 : Integer.parseInt(checkpoint.getPosition(), 16) + 1;
+        int end = Math.min(SHARDS, first + shardsPerRun);
+        List<Future<ShardResult>> shards = new ArrayList<>();
+        for (int shard = first; shard < end; shard++) {
+            String prefix = String.format("%02x", shard);
+            shards.add(executor.submit(() -> scanShard(backend, tiers, prefix)));
+        }
+
+        int completed = first - 1;
+        boolean failed = false;
+        ShardResult total = new ShardResult(0, 0, 0, 0, 0);
+        for (int i = 0; i < shards.size(); i++) {
+            try {
+                total = total.plus(shards.get(i).get());
+                if (!failed) {
+                    completed = first + i;
+                }
+            } catch (ExecutionException e) {
+                failed = true;
+                log.warn("shard scan failed backend={} shard={} error={}", backend,
+                        String.format("%02x", first + i), e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (completed >= first) {
+            save(checkpoint, completed == SHARDS - 1 ? null : String.format("%02x", completed));
+        }
+        if (total.orphans() > 0 || total.missing() > 0 || total.recovered() > 0) {
+            log.info("scanned blobs backend={} shards={} objects={} orphans={} missing={} recovered={}",
+                    backend, completed - first + 1, total.objects(), total.orphans(), total.missing(), total.recovered());
+        }
+        if (completed == SHARDS - 1) {
+            log.info("completed blob scan pass backend={} startedAt={}", backend, checkpoint.getPassStartedAt());
+        }
+    }
+
+    private ShardResult scanShard(String backend, List<ShardedLocalStorageBackend> tiers, String prefix) throws IOException {
+        long graceCutoff = System.currentTimeMillis() - grace.toMillis();
+        // Every object of the shard on disk, across all tiers, in hash order
+        Map<String, DiskObject> onDisk = new TreeMap<>();
+        for (ShardedLocalStorageBackend tier : tiers) {
+            walkShard(tier.getRoot().resolve(prefix), graceCutoff, onDisk);
+        }
+        int objects = onDisk.size();
+
+        // Whatever the blob rows of this range do not claim is left in onDisk
+        List<String> gone = new ArrayList<>();
+        List<String> back = new ArrayList<>();
+        String after = prefix;
+        String before = prefix + "g"; // sorts after every hex hash starting with prefix
+        List<BlobScanRow> page;
+        do {
+            page = blobRepository.findScanPage(backend, after, before, batchSize);
+            for (BlobScanRow row : page) {
+                if (onDisk.remove(row.getHash()) != null) {
+                    if (row.getMissingAt() != null) {
+                        back.add(row.getHash());
+                    }
+                } else if (row.getMissingAt() == null && !existsInAnyTier(tiers, row.getHash())) {
+                    gone.add(row.getHash()); // re-checked: it may have been written after the walk
+                }
+            }
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1).getHash();
+            }
+        } while (page.size() == batchSize);
+
+        LocalDateTime now = LocalDateTime.now();
+        for (List<String> chunk : chunks(gone)) {
+            blobRepository.markMissing(chunk, now);
+        }
+        for (List<String> chunk : chunks(back)) {
+            blobRepository.clearMissing(chunk);
+        }
+        missing.increment(gone.size());
+
+        int quarantined = 0;
+        long quarantinedBytes = 0;
+        for (Map.Entry<String, DiskObject> orphan : onDisk.entrySet()) {
+            DiskObject object = orphan.getValue();
+            // Recent objects may belong to an upload whose transaction has not committed yet
+            if (object.modified() > graceCutoff || blobRepository.isStoredIn(orphan.getKey(), backend)) {
+                continue;
+            }
+            // An upload of identical content may have replaced the object since the walk, its
+            // transaction still open; only the very file that was walked is moved
+            if (!unchanged(object)) {
+                continue;
+            }
+            Path target = quarantine(backend, object.path());
+            if (target == null) {
+                continue;
+            }
+            // Replaced between the check and the move, or claimed meanwhile; put it back
+            if (!sameFile(target, object) || blobRepository.isStoredIn(orphan.getKey(), backend)) {
+                restore(target, object.path());
+                continue;
+            }
+            quarantined++;
+            quarantinedBytes += object.size();
+        }
+        orphans.increment(quarantined);
+        orphanBytes.increment(quarantinedBytes);
+        return new ShardResult(objects, quarantined, quarantinedBytes, gone.size(), back.size());
+    }
+
+    // Walks <root>/ab/cd/<key>; stale .part files from interrupted writes are deleted on the way
+    private static void walkShard(Path dir, long graceCutoff, Map<String, DiskObject> onDisk) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class), 2, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                if (!attributes.isRegularFile()) {
+                    return FileVisitResult.CONTINUE;
+                }
+                String key = file.getFileName().toString();
+                long modified = attributes.lastModifiedTime().toMillis();
+                if (key.endsWith(PARTIAL_SUFFIX)) {
+                    if (modified < graceCutoff) {
+                        Files.deleteIfExists(file);
+                    }
+                } else {
+                    onDisk.put(key, new DiskObject(file, attributes.size(), modified, attributes.fileKey()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                if (e instanceof NoSuchFileException) {
+                    return FileVisitResult.CONTINUE; // deleted while we were walking
+                }
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Files written before the blob store keep their plain path on the row. A pass first quarantines
+     * files directly in the upload directory that no row points at (and stale blob temp files), then
+     * checks every path-stored row's file exists, a page at a time.
+     */
+    private void scanFiles() {
+        StorageScanCheckpoint checkpoint = checkpoint(FILES_SCOPE);
+        if (checkpoint.getPosition() == null) {
+            sweepUploadDir();
+        }
+        long after = checkpoint.getPosition() == null ? 0 : Long.parseLong(checkpoint.getPosition());
+        int scanned = 0;
+        int gone = 0;
+        int back = 0;
+        List<LegacyFileRow> page;
+        do {
+            page = fileRepository.findLegacyPage(after, batchSize);
+            List<Long> missingIds = new ArrayList<>();
+            List<Long> foundIds = new ArrayList<>();
+            for (LegacyFileRow row : page) {
+                boolean exists = exists(row.getPath());
+                if (!exists && row.getMissingAt() == null) {
+                    missingIds.add(row.getId());
+                } else if (exists && row.getMissingAt() != null) {
+                    foundIds.add(row.getId());
+                }
+            }
+            LocalDateTime now = LocalDateTime.now();
+            if (!missingIds.isEmpty()) {
+                fileRepository.markMissing(missingIds, now);
+            }
+            if (!foundIds.isEmpty()) {
+                fileRepository.clearMissing(foundIds);
+            }
+            gone += missingIds.size();
+            back += foundIds.size();
+            scanned += page.size();
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1).getId();
+                save(checkpoint, String.valueOf(after));
+            }
+        } while (page.size() == batchSize && scanned < filesPerRun);
+        missing.increment(gone);
+        if (page.size() < batchSize) {
+            save(checkpoint, null);
+        }
+        if (gone > 0 || back > 0) {
+            log.info("scanned path-stored files count={} missing={} recovered={}", scanned, gone, back);
+        }
+    }
+
+    private void sweepUploadDir() {
+        long graceCutoff = System.currentTimeMillis() - grace.toMillis();
+        int quarantined = 0;
+        long quarantinedBytes = 0;
+        if (Files.isDirectory(uploadDir)) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(uploadDir)) {
+                Map<String, DiskObject> batch = new HashMap<>();
+                for (Path entry : entries) {
+                    BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                    if (!attributes.isRegularFile() || attributes.lastModifiedTime().toMillis() > graceCutoff) {
+                        continue; // the blob store, sessions and caches live in subdirectories
+                    }
+                    batch.put(entry.toString(), new DiskObject(entry, attributes.size(), attributes.lastModifiedTime().toMillis(),
+                            attributes.fileKey()));
+                    if (batch.size() == batchSize) {
+                        long[] result = quarantineUnreferenced(batch);
+                        quarantined += result[0];
+                        quarantinedBytes += result[1];
+                        batch.clear();
+                    }
+                }
+                long[] result = quarantineUnreferenced(batch);
+                quarantined += result[0];
+                quarantinedBytes += result[1];
+            } catch (IOException e) {
+                log.warn("upload directory sweep failed error={}", e.getMessage());
+            }
+        }
+        orphans.increment(quarantined);
+        orphanBytes.increment(quarantinedBytes);
+        if (quarantined > 0) {
+            log.info("quarantined unreferenced upload files count={} bytes={}", quarantined, quarantinedBytes);
+        }
+        deleteOlderThan(uploadDir.resolve("blobs").resolve(BLOB_TEMP_DIR), graceCutoff);
+    }
+
+    // Rows may hold the path relative to the working directory or absolute; either counts as a reference
+    private long[] quarantineUnreferenced(Map<String, DiskObject> batch) {
+        if (batch.isEmpty()) {
+            return new long[2];
+        }
+        Set<String> candidates = new HashSet<>(batch.keySet());
+        batch.values().forEach(object -> candidates.add(object.path().toAbsolutePath().toString()));
+        Set<String> referenced = new HashSet<>(fileRepository.findExistingPaths(candidates));
+        long count = 0;
+        long bytes = 0;
+        for (DiskObject object : batch.values()) {
+            if (referenced.contains(object.path().toString())
+                    || referenced.contains(object.path().toAbsolutePath().toString())) {
+                continue;
+            }
+            if (quarantine(LEGACY_QUARANTINE, object.path()) != null) {
+                count++;
+                bytes += object.size();
+            }
+        }
+        return new long[]{count, bytes};
+    }
+
+    // Moves the file aside rather than deleting it, so a false positive can still be restored by hand
+    private Path quarantine(String group, Path path) {
+        Path target = quarantineDir.resolve(group).resolve(path.getFileName().toString());
+        try {
+            Files.createDirectories(target.getParent());
+            Files.move(path, target, StandardCopyOption.REPLACE_EXISTING);
+            // Dated by when it was quarantined, which is what the retention counts from
+            Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+            return target;
+        } catch (NoSuchFileException e) {
+            return null; // deleted meanwhile
+        } catch (IOException e) {
+            log.warn("quarantine failed path={} error={}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    // Whether the object on disk is still the file the walk saw
+    private static boolean unchanged(DiskObject object) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(object.path(), BasicFileAttributes.class);
+            return attributes.lastModifiedTime().toMillis() == object.modified()
+                    && attributes.size() == object.size()
+                    && Objects.equals(attributes.fileKey(), object.fileKey());
+        } catch (IOException e) {
+            return false; // gone or unreadable: leave it to the next run
+        }
+    }
+
+    // Whether the quarantined file is the walked one; the move keeps the file key but not the mtime
+    private static boolean sameFile(Path target, DiskObject object) {
+        if (object.fileKey() == null) {
+            return true; // no file keys on this file system, the re-stat before the move has to do
+        }
+        try {
+            return object.fileKey().equals(Files.readAttributes(target, BasicFileAttributes.class).fileKey());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void restore(Path target, Path path) {
+        try {
+            Files.move(target, path);
+        } catch (FileAlreadyExistsException e) {
+            // An upload has placed the same content there again; this copy is redundant
+            try {
+                Files.deleteIfExists(target);
+            } catch (IOException ignored) {
+                // left for the quarantine purge
+            }
+        } catch (IOException e) {
+            log.warn("could not restore quarantined object path={} error={}", path, e.getMessage());
+        }
+    }
+
+    private void purgeQuarantine() {
+        long cutoff = System.currentTimeMillis() - quarantineRetention.toMillis();
+        if (!Files.isDirectory(quarantineDir)) {
+            return;
+        }
+        try (DirectoryStream<Path> groups = Files.newDirectoryStream(quarantineDir)) {
+            for (Path group : groups) {
+                deleteOlderThan(group, cutoff);
+            }
+        } catch (IOException e) {
+            log.warn("quarantine purge failed error={}", e.getMessage());
+        }
+    }
+
+    private static void deleteOlderThan(Path dir, long cutoffMillis) {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                try {
+                    if (Files.isRegularFile(file) && Files.getLastModifiedTime(file).toMillis() < cutoffMillis) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (IOException e) {
+                    // Retried on the next run
+                }
+            }
+        } catch (IOException e) {
+            log.warn("cleanup failed dir={} error={}", dir, e.getMessage());
+        }
+    }
+
+    private static List<ShardedLocalStorageBackend> localTiers(StorageBackend backend) {
+        if (backend instanceof ShardedLocalStorageBackend local) {
+            return List.of(local);
+        }
+        if (backend instanceof TieredStorageBackend tiered) {
+            return tiered.getTiers();
+        }
+        return List.of();
+    }
+
+    private static boolean existsInAnyTier(List<ShardedLocalStorageBackend> tiers, String key) {
+        return tiers.stream().anyMatch(tier -> Files.exists(tier.pathFor(key)));
+    }
+
+    private static boolean exists(String path) {
+        try {
+            return Files.exists(Paths.get(path));
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    private <T> List<List<T>> chunks(List<T> items) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += batchSize) {
+            chunks.add(items.subList(i, Math.min(items.size(), i + batchSize)));
+        }
+        return chunks;
+    }
+
+    private StorageScanCheckpoint checkpoint(String scope) {
+        StorageScanCheckpoint checkpoint = checkpointRepository.findById(scope)
+                .orElseGet(() -> StorageScanCheckpoint.builder().scope(scope).build());
+        if (checkpoint.getPosition() == null) {
+            checkpoint.setPassStartedAt(LocalDateTime.now());
+        }
+        return checkpoint;
+    }
+
+    private void save(StorageScanCheckpoint checkpoint, String position) {
+        checkpoint.setPosition(position);
+        checkpoint.setUpdatedAt(LocalDateTime.now());
+        checkpointRepository.save(checkpoint);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private record DiskObject(Path path, long size, long modified, Object fileKey) {
+    }
+
+    private record ShardResult(int objects, int orphans, long orphanBytes, int missing, int recovered) {
+        ShardResult plus(ShardResult other) {
+            return new ShardResult(objects + other.objects, orphans + other.orphans, orphanBytes + other.orphanBytes,
+                    missing + other.missing, recovered + other.recovered);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.cloudstore.service;
+
+import com.cloudstore.model.DerivedAsset;
+import com.cloudstore.model.File;
+import com.cloudstore.repository.DerivedAssetRepository;
+import com.cloudstore.repository.FileRepository;
+import com.cloudstore.storage.BlobStore;
+import com.cloudstore.storage.RemoteFileCache;
+import com.cloudstore.storage.StorageBackendRegistry;
+import com.cloudstore.storage.StoredBlob;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.coobird.thumbnailator.Thumbnails;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thumbnails and previews for image files, stored as {@link DerivedAsset}s whose bytes live in the
+ * blob store. Renditions are generated on a bounded pool: the configured sizes right after upload,
+ * anything else on first request. Concurrent requests for the same rendition share one generation.
+ * WebP is produced only when an ImageIO WebP writer is on the classpath; JPEG otherwise.
+ */
+@Slf4j
+@Service
+public class ThumbnailService {
+    public static final String JPEG = "jpeg";
+    public static final String WEBP = "webp";
+    private static final Map<String, Integer> SIZES = Map.of("small", 128, "medium", 512, "large", 1280);
+
+    private final DerivedAssetRepository derivedAssetRepository;
+    private final FileRepository fileRepository;
+    private final BlobStore blobStore;
+    private final StorageBackendRegistry storageBackendRegistry;
+    private final RemoteFileCache remoteFileCache;
+    private final ThreadPoolExecutor executor;
+    private final Duration waitTimeout;
+    private final List<String> pregenerateSizes;
+    private final long maxPixels;
+    private final boolean webpAvailable = ImageIO.getImageWritersByFormatName(WEBP).hasNext();
+    private final Map<String, CompletableFuture<DerivedAsset>> inFlight = new ConcurrentHashMap<>();
+
+    public ThumbnailService(DerivedAssetRepository derivedAssetRepository,
+                            FileRepository fileRepository,
+                            BlobStore blobStore,
+                            StorageBackendRegistry storageBackendRegistry,
+                            RemoteFileCache remoteFileCache,
+                            @Value("${thumbnail.workers:0}") int workers,
+                            @Value("${thumbnail.queue-capacity:1000}") int queueCapacity,
+                            @Value("${thumbnail.wait-timeout:5s}") Duration waitTimeout,
+                            @Value("${thumbnail.pregenerate-sizes:small,medium}") List<String> pregenerateSizes,
+                            @Value("${thumbnail.max-pixels:100000000}") long maxPixels) {
+        this.derivedAssetRepository = derivedAssetRepository;
+        this.fileRepository = fileRepository;
+        this.blobStore = blobStore;
+        this.storageBackendRegistry = storageBackendRegistry;
+        this.remoteFileCache = remoteFileCache;
+        this.waitTimeout = waitTimeout;
+        this.pregenerateSizes = pregenerateSizes;
+        this.maxPixels = maxPixels;
+        int threads = workers > 0 ? workers : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+                    Thread t = new Thread(r, "thumbnail-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    public boolean isSupported(File file) {
+        return MediaTypeFactory.getMediaType(file.getName())
+                .map(type -> "image".equals(type.getType()))
+                .orElse(false);
+    }
+
+    // WebP when the client accepts it and this JVM can write it
+    public String negotiateFormat(String acceptHeader) {
+        return webpAvailable && acceptHeader != null && acceptHeader.contains("image/webp") ? WEBP : JPEG;
+    }
+
+    /**
+     * Returns the rendition, generating it if needed and waiting up to {@code thumbnail.wait-timeout}.
+     * Empty means generation is still running (or queued) and the client should retry.
+     */
+    public Optional<DerivedAsset> getOrGenerate(File file, String size, String format) {
+        if (!isSupported(file)) {
+            throw new RuntimeException("Thumbnails are only available for images");
+        }
+        if (!SIZES.containsKey(size)) {
+            throw new RuntimeException("Unknown thumbnail size: " + size);
+        }
+        Optional<DerivedAsset> existing = derivedAssetRepository.findByFileAndVariant(file, variant(size, format));
+        if (existing.isPresent()) {
+            return existing;
+        }
+        try {
+            return Optional.of(submit(file.getId(), size, format).get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS));
+        } catch (TimeoutException | RejectedExecutionException e) {
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Thumbnail generation failed: " + e.getCause().getMessage());
+        }
+    }
+
+    // Queues the configured sizes once the upload's transaction has committed
+    public void pregenerate(File file) {
+        if (!isSupported(file) || pregenerateSizes.isEmpty()) {
+            return;
+        }
+        Runnable task = () -> {
+            String format = webpAvailable ? WEBP : JPEG;
+            for (String size : pregenerateSizes) {
+                if (!SIZES.containsKey(size.trim())) {
+                    continue;
+                }
+                try {
+                    submit(file.getId(), size.trim(), format);
+                } catch (RejectedExecutionException e) {
+                    return; // pool saturated; these are generated on first request instead
+                }
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+
+    // Called when the source file is permanently deleted
+    @Transactional
+    public void deleteForFile(File file) {
+        List<DerivedAsset> assets = derivedAssetRepository.findAllByFile(file);
+        derivedAssetRepository.deleteAll(assets);
+        for (DerivedAsset asset : assets) {
+            blobStore.release(asset.getContentHash());
+        }
+    }
+
+    // Batch variant for permanently deleting many files at once
+    @Transactional
+    public void deleteForFiles(Collection<Long> fileIds) {
+        List<String> hashes = derivedAssetRepository.findContentHashesByFileIds(fileIds);
+        derivedAssetRepository.deleteAllByFileIds(fileIds);
+        hashes.forEach(blobStore::release);
+    }
+
+    private CompletableFuture<DerivedAsset> submit(Long fileId, String size, String format) {
+        String key = fileId + ":" + variant(size, format);
+        CompletableFuture<DerivedAsset> created = new CompletableFuture<>();
+        CompletableFuture<DerivedAsset> running = inFlight.putIfAbsent(key, created);
+        if (running != null) {
+            return running;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    created.complete(generate(fileId, size, format));
+                } catch (Exception e) {
+                    created.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(key, created);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, created);
+            throw e;
+        }
+        return created;
+    }
+
+    private DerivedAsset generate(Long fileId, String size, String format) throws IOException {
+        File file = fileRepository.findById(fileId).orElseThrow(() -> new RuntimeException("File not found"));
+        String variant = variant(size, format);
+        Optional<DerivedAsset> existing = derivedAssetRepository.findByFileAndVariant(file, variant);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+
+        int bound = SIZES.get(size);
+        BufferedImage source;
+        try (InputStream in = openSource(file)) {
+            source = readImage(in, bound);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Thumbnails.Builder<BufferedImage> builder = Thumbnails.of(source);
+        if (Math.max(source.getWidth(), source.getHeight()) > bound) {
+            builder.size(bound, bound);
+        } else {
+            builder.scale(1.0); // never upscale
+        }
+        if (JPEG.equals(format)) {
+            builder.imageType(BufferedImage.TYPE_INT_RGB); // JPEG has no alpha channel
+        }
+        BufferedImage rendered = builder.asBufferedImage();
+        Thumbnails.of(rendered).scale(1.0).outputFormat(format).outputQuality(0.8).toOutputStream(out);
+
+        StoredBlob blob = blobStore.store(new ByteArrayResource(out.toByteArray()), null);
+        DerivedAsset asset = DerivedAsset.builder()
+                .file(file)
+                .variant(variant)
+                .width(rendered.getWidth())
+                .height(rendered.getHeight())
+                .size(blob.getSize())
+                .contentHash(blob.getHash())
+                .storageBackend(blob.getBackend())
+                .build();
+        try {
+            return derivedAssetRepository.save(asset);
+        } catch (DataIntegrityViolationException e) {
+            // Another node generated it first
+            blobStore.release(blob.getHash());
+            return derivedAssetRepository.findByFileAndVariant(file, variant).orElseThrow(() -> e);
+        }
+    }
+
+    // Reads the dimensions from the header first: sources above thumbnail.max-pixels are refused, and
+    // large ones are decoded subsampled to about twice the target size, so one huge image can't fill the heap
+    private BufferedImage readImage(InputStream in, int bound) throws IOException {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = stream != null ? ImageIO.getImageReaders(stream) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new IOException("Image too large: " + width + "x" + height);
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.max(width, height) / (bound * 2));
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private InputStream openSource(File file) throws IOException {
+        if (file.getUrl() != null && !file.getUrl().isEmpty()) {
+            return remoteFileCache.open(file.getUrl()).inputStream();
+        }
+        if (file.getContentHash() == null) {
+            return Files.newInputStream(Paths.get(file.getPath()));
+        }
+        return storageBackendRegistry.get(file.getStorageBackend()).get(file.getContentHash());
+    }
+
+    private static String variant(String size, String format) {
+        return size + "." + format;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,86 @@
+package com.cloudstore.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Upload and download meters shared by every path that moves file content: latency, bytes and
+ * per-transfer throughput, tagged by kind of transfer and outcome, plus gauges of transfers in
+ * progress. Percentiles and histograms come from {@code MetricsConfig}.
+ */
+@Component
+public class TransferMetrics {
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger activeUploads = new AtomicInteger();
+    private final AtomicInteger activeDownloads = new AtomicInteger();
+
+    public TransferMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("cloudstore.upload.active", activeUploads, AtomicInteger::get)
+                .description("Uploads being written to storage")
+                .register(meterRegistry);
+        Gauge.builder("cloudstore.download.active", activeDownloads, AtomicInteger::get)
+                .description("Downloads being streamed")
+                .register(meterRegistry);
+    }
+
+    public Timer.Sample uploadStarted() {
+        activeUploads.incrementAndGet();
+        return Timer.start(meterRegistry);
+    }
+
+    // kind: multipart, single or chunk; bytes are only counted for uploads that succeeded
+    public void uploadFinished(Timer.Sample sample, String kind, boolean succeeded, long bytes) {
+        activeUploads.decrementAndGet();
+        long nanos = sample.stop(Timer.builder("cloudstore.upload")
+                .description("Time to store an uploaded file or chunk")
+                .tag("kind", kind)
+                .tag("outcome", succeeded ? "success" : "failure")
+                .register(meterRegistry));
+        if (succeeded) {
+            recordBytes("cloudstore.upload", "kind", kind, bytes, nanos);
+        }
+    }
+
+    public Timer.Sample downloadStarted() {
+        activeDownloads.incrementAndGet();
+        return Timer.start(meterRegistry);
+    }
+
+    // source: file (local disk) or backend (streamed from a storage backend); bytes are the body sent
+    public void downloadFinished(Timer.Sample sample, String source, int status, long bytes) {
+        activeDownloads.decrementAndGet();
+        long nanos = sample.stop(Timer.builder("cloudstore.download")
+                .description("Time to serve a download, until the body is written or handed to sendfile")
+                .tag("source", source)
+                .tag("status", String.valueOf(status))
+                .register(meterRegistry));
+        recordBytes("cloudstore.download", "source", source, bytes, nanos);
+    }
+
+    private void recordBytes(String prefix, String tag, String value, long bytes, long nanos) {
+        if (bytes <= 0) {
+            return;
+        }
+        DistributionSummary.builder(prefix + ".bytes")
+                .description("Bytes transferred")
+                .baseUnit("bytes")
+                .tag(tag, value)
+                .register(meterRegistry)
+                .record(bytes);
+        if (nanos > 0) {
+            DistributionSummary.builder(prefix + ".throughput")
+                    .description("Bytes per second of a single transfer")
+                    .baseUnit("bytes_per_second")
+                    .tag(tag, value)
+                    .register(meterRegistry)
+                    .record(bytes * (double) TimeUnit.SECONDS.toNanos(1) / nanos);
+        }
+    }
+}
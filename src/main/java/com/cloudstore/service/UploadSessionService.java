@@ -0,0 +1,266 @@
+package com.cloudstore.service;
+
+import com.cloudstore.dto.CreateUploadSessionRequest;
+import com.cloudstore.dto.FileResponse;
+import com.cloudstore.dto.UploadSessionResponse;
+import com.cloudstore.dto.UploadSessionResponse.ReceivedRange;
+import com.cloudstore.model.Folder;
+import com.cloudstore.model.UploadChunk;
+import com.cloudstore.model.UploadSession;
+import com.cloudstore.model.User;
+import com.cloudstore.repository.UploadChunkRepository;
+import com.cloudstore.repository.UploadSessionRepository;
+import com.cloudstore.storage.BlobStore;
+import com.cloudstore.storage.StoredBlob;
+import com.cloudstore.storage.UploadStreamWriter;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Resumable uploads. A session pre-allocates a sparse file of the declared size; clients PUT
+ * chunks at arbitrary offsets (in any order, concurrently) and each chunk is written in place with
+ * a positional channel write. Received ranges are recorded as one row per chunk, so parallel
+ * chunk streams never contend on a shared row. The {@code File} entity is only created on commit,
+ * which claims the session first and hashes the assembled file with no transaction open.
+ */
+@Service
+@RequiredArgsConstructor
+public class UploadSessionService {
+    private static final String SESSION_DIR = "sessions";
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final UploadChunkRepository uploadChunkRepository;
+    private final FileService fileService;
+    private final UploadStreamWriter uploadStreamWriter;
+    private final BlobStore blobStore;
+    private final UsageService usageService;
+    private final TransferMetrics transferMetrics;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${file.upload-dir:uploads}")
+    private String uploadDir;
+
+    @Value("${file.upload.session-ttl:24h}")
+    private Duration sessionTtl;
+
+    @Value("${file.upload.max-file-size:10GB}")
+    private DataSize maxFileSize;
+
+    @Transactional
+    public UploadSessionResponse createSession(User user, CreateUploadSessionRequest request) throws IOException {
+        if (request.getFileName() == null || request.getFileName().isBlank()) {
+            throw new RuntimeException("File name is required");
+        }
+        if (request.getSize() == null || request.getSize() < 0) {
+            throw new RuntimeException("File size is required");
+        }
+        // Same limit as multipart uploads; checked before the sparse file is allocated
+        if (request.getSize() > maxFileSize.toBytes()) {
+            throw new RuntimeException("File exceeds the maximum upload size of " + maxFileSize.toMegabytes() + " MB");
+        }
+        usageService.checkQuota(user, request.getSize());
+        Folder folder = fileService.findWritableFolder(user, request.getFolderId());
+        String id = UUID.randomUUID().toString();
+        Path dir = Paths.get(uploadDir, SESSION_DIR);
+        Files.createDirectories(dir);
+        Path tempPath = dir.resolve(id + ".upload");
+        preallocate(tempPath, request.getSize());
+
+        UploadSession session = UploadSession.builder()
+                .id(id)
+                .user(user)
+                .fileName(request.getFileName())
+                .totalSize(request.getSize())
+                .folder(folder)
+                .tempPath(tempPath.toString())
+                .expiresAt(LocalDateTime.now().plus(sessionTtl))
+                .build();
+        uploadSessionRepository.save(session);
+        return toResponse(session, List.of());
+    }
+
+    public UploadSessionResponse getSession(User user, String sessionId) {
+        UploadSession session = findOpenSession(user, sessionId);
+        return toResponse(session, receivedRanges(session));
+    }
+
+    /**
+     * Writes {@code length} bytes from {@code body} at {@code offset}. If the client disconnects
+     * part-way, the bytes that did arrive are still recorded so the next attempt can resume there.
+     */
+    public UploadSessionResponse writeChunk(User user, String sessionId, long offset, long length, InputStream body) throws IOException {
+        UploadSession session = findOpenSession(user, sessionId);
+        if (offset < 0 || length < 0 || offset + length > session.getTotalSize()) {
+            throw new RuntimeException("Chunk is outside the declared file size");
+        }
+        long written = 0;
+        Timer.Sample sample = transferMetrics.uploadStarted();
+        try (ReadableByteChannel source = Channels.newChannel(body);
+             FileChannel target = FileChannel.open(Paths.get(session.getTempPath()), StandardOpenOption.WRITE)) {
+            while (written < length) {
+                long transferred = target.transferFrom(source, offset + written,
+                        Math.min(uploadStreamWriter.getBufferSize(), length - written));
+                if (transferred <= 0) {
+                    break;
+                }
+                written += transferred;
+            }
+            target.force(false);
+        } finally {
+            transferMetrics.uploadFinished(sample, "chunk", written == length, written);
+            if (written > 0) {
+                uploadChunkRepository.save(UploadChunk.builder()
+                        .session(session)
+                        .startOffset(offset)
+                        .endOffset(offset + written)
+                        .build());
+            }
+        }
+        if (written < length) {
+            throw new RuntimeException("Chunk incomplete: received " + written + " of " + length + " bytes");
+        }
+        return toResponse(session, receivedRanges(session));
+    }
+
+    /**
+     * Creates the file from a complete session. Hashing a multi-GB file takes minutes, so it runs
+     * with no transaction open; only the final insert is transactional. The quota is checked again
+     * here, since other uploads may have used it up since the session was created.
+     */
+    public FileResponse commit(User user, String sessionId) throws IOException {
+        UploadSession session = findOpenSession(user, sessionId);
+        if (uploadSessionRepository.claimForCommit(sessionId, user) == 0) {
+            throw new RuntimeException("Upload session is already being committed");
+        }
+        // The folder proxy's id is known without loading it
+        Long folderId = session.getFolder() != null ? session.getFolder().getId() : null;
+        StoredBlob blob = null;
+        try {
+            long received = receivedBytes(receivedRanges(session));
+            if (received < session.getTotalSize()) {
+                throw new RuntimeException("Upload incomplete: received " + received + " of " + session.getTotalSize() + " bytes");
+            }
+            fileService.findWritableFolder(user, folderId);
+            usageService.checkQuota(user, session.getTotalSize());
+            blob = blobStore.adopt(Paths.get(session.getTempPath()));
+            StoredBlob stored = blob;
+            return transactionTemplate.execute(status -> {
+                Folder folder = fileService.findWritableFolder(user, folderId);
+                FileResponse response = fileService.createLocalFile(user, session.getFileName(), stored, folder);
+                uploadChunkRepository.deleteAllBySession(session);
+                uploadSessionRepository.delete(session);
+                return response;
+            });
+        } catch (IOException | RuntimeException e) {
+            if (blob != null) {
+                // The assembled file now belongs to the blob store, so the session can't be committed again
+                blobStore.release(blob.getHash());
+                transactionTemplate.executeWithoutResult(status -> {
+                    uploadChunkRepository.deleteAllBySession(session);
+                    uploadSessionRepository.delete(session);
+                });
+            } else {
+                uploadSessionRepository.releaseClaim(sessionId);
+            }
+            throw e;
+        }
+    }
+
+    @Transactional
+    public void abort(User user, String sessionId) throws IOException {
+        UploadSession session = uploadSessionRepository.findByIdAndUser(sessionId, user)
+                .orElseThrow(() -> new RuntimeException("Upload session not found"));
+        discard(session);
+    }
+
+    @Scheduled(fixedDelayString = "${file.upload.session-cleanup-interval:PT1H}")
+    @Transactional
+    public void purgeExpiredSessions() {
+        for (UploadSession session : uploadSessionRepository.findAllByExpiresAtBefore(LocalDateTime.now())) {
+            try {
+                discard(session);
+            } catch (IOException e) {
+                // Leave the row so the next run retries removing the partial file
+            }
+        }
+    }
+
+    private void discard(UploadSession session) throws IOException {
+        Files.deleteIfExists(Paths.get(session.getTempPath()));
+        uploadChunkRepository.deleteAllBySession(session);
+        uploadSessionRepository.delete(session);
+    }
+
+    private UploadSession findOpenSession(User user, String sessionId) {
+        UploadSession session = uploadSessionRepository.findByIdAndUser(sessionId, user)
+                .orElseThrow(() -> new RuntimeException("Upload session not found"));
+        if (session.getExpiresAt() != null && session.getExpiresAt().isBefore(LocalDateTime.now())) {
+            throw new RuntimeException("Upload session expired");
+        }
+        if (session.isCommitting()) {
+            throw new RuntimeException("Upload session is being committed");
+        }
+        return session;
+    }
+
+    private void preallocate(Path path, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.SPARSE)) {
+            if (size > 0) {
+                channel.write(ByteBuffer.wrap(new byte[1]), size - 1);
+            }
+        }
+    }
+
+    // Chunks come back ordered by start offset; overlapping or adjacent chunks are coalesced
+    private List<ReceivedRange> receivedRanges(UploadSession session) {
+        List<ReceivedRange> merged = new ArrayList<>();
+        ReceivedRange current = null;
+        for (UploadChunk chunk : uploadChunkRepository.findAllBySessionOrderByStartOffset(session)) {
+            if (current != null && chunk.getStartOffset() <= current.getEnd()) {
+                current.setEnd(Math.max(current.getEnd(), chunk.getEndOffset()));
+            } else {
+                current = new ReceivedRange(chunk.getStartOffset(), chunk.getEndOffset());
+                merged.add(current);
+            }
+        }
+        return merged;
+    }
+
+    private long receivedBytes(List<ReceivedRange> ranges) {
+        return ranges.stream().mapToLong(range -> range.getEnd() - range.getStart()).sum();
+    }
+
+    private UploadSessionResponse toResponse(UploadSession session, List<ReceivedRange> ranges) {
+        return new UploadSessionResponse(
+                session.getId(),
+                session.getFileName(),
+                session.getTotalSize(),
+                receivedBytes(ranges),
+                ranges,
+                session.getExpiresAt()
+        );
+    }
+}
@@ -0,0 +1,190 @@
+package com.cloudstore.service;
+
+import com.cloudstore.dto.UsageResponse;
+import com.cloudstore.model.File;
+import com.cloudstore.model.User;
+import com.cloudstore.model.UserUsage;
+import com.cloudstore.repository.FileUsage;
+import com.cloudstore.repository.FolderUsageRepository;
+import com.cloudstore.repository.UserUsageRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Storage usage per user (files and trash) and per folder (files directly inside), kept as counters
+ * that every file change adjusts with a single upsert, so reading usage or checking a quota never
+ * scans {@code files}. Counters are recomputed from {@code files} at startup and every
+ * {@code usage.reconcile-interval} to correct any drift, a small batch of users at a time under the
+ * same row locks the deltas take. New files are charged against the quota in one conditional update.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UsageService {
+    private static final int RECONCILE_BATCH = 100;
+
+    private final UserUsageRepository userUsageRepository;
+    private final FolderUsageRepository folderUsageRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${usage.quota.default:0B}")
+    private DataSize defaultQuota;
+
+    public UsageResponse getUsage(User user) {
+        UserUsage usage = userUsageRepository.findById(user.getId()).orElseGet(() -> UserUsage.builder().build());
+        Long quota = quotaFor(user);
+        Long available = quota != null ? Math.max(0, quota - usage.getTotalBytes() - usage.getTrashBytes()) : null;
+        return UsageResponse.builder()
+                .fileCount(usage.getFileCount())
+                .usedBytes(usage.getTotalBytes())
+                .trashFileCount(usage.getTrashFileCount())
+                .trashBytes(usage.getTrashBytes())
+                .quotaBytes(quota)
+                .availableBytes(available)
+                .build();
+    }
+
+    // Called before any bytes are written, to fail early; filesAdded enforces the quota atomically.
+    // Files in the trash still count until they are purged
+    public void checkQuota(User user, long incomingBytes) {
+        Long quota = quotaFor(user);
+        if (quota == null) {
+            return;
+        }
+        long stored = userUsageRepository.findById(user.getId())
+                .map(usage -> usage.getTotalBytes() + usage.getTrashBytes())
+                .orElse(0L);
+        if (stored + incomingBytes > quota) {
+            throw new RuntimeException("Storage quota exceeded");
+        }
+    }
+
+    /**
+     * Charges new files of {@code user}. With a quota the user counter only moves if the files fit, in
+     * one statement on the locked row, so parallel uploads can't together overshoot it; otherwise
+     * "Storage quota exceeded" is thrown and the caller's transaction rolls back.
+     */
+    @Transactional
+    public void filesAdded(User user, Collection<File> files) {
+        List<FileUsage> usages = files.stream().map(FileUsage::of).toList();
+        Long quota = quotaFor(user);
+        if (quota == null) {
+            apply(usages, 1);
+            return;
+        }
+        long count = 0;
+        long bytes = 0;
+        for (FileUsage usage : usages) {
+            count += usage.getFileCount();
+            bytes += usage.getTotalBytes();
+        }
+        userUsageRepository.add(user.getId(), 0, 0, 0, 0);
+        if (userUsageRepository.addWithinQuota(user.getId(), count, bytes, quota) == 0) {
+            throw new RuntimeException("Storage quota exceeded");
+        }
+        applyFolders(usages, 1);
+    }
+
+    // Usages are taken before the files are deleted
+    @Transactional
+    public void filesRemoved(Collection<FileUsage> usages) {
+        apply(usages, -1);
+    }
+
+    // Usages are taken before the change; moves files between the live and trash counters
+    @Transactional
+    public void deletedChanged(Collection<FileUsage> usages, boolean deleted) {
+        List<FileUsage> changed = usages.stream().filter(u -> u.getDeleted() != deleted).toList();
+        apply(changed, -1);
+        apply(changed.stream().map(u -> new FileUsage(u.getUserId(), u.getFolderId(), deleted, u.getFileCount(),
+                u.getTotalBytes())).toList(), 1);
+    }
+
+    @Transactional
+    public void filesMoved(Collection<FileUsage> usages, Long folderId) {
+        List<FileUsage> changed = usages.stream().filter(u -> !Objects.equals(u.getFolderId(), folderId)).toList();
+        apply(changed, -1);
+        apply(changed.stream().map(u -> new FileUsage(u.getUserId(), folderId, u.getDeleted(), u.getFileCount(),
+                u.getTotalBytes())).toList(), 1);
+    }
+
+    // Folder counters go with their folders when a deleted folder is purged
+    @Transactional
+    public void foldersRemoved(Collection<Long> folderIds) {
+        folderUsageRepository.deleteAllByFolderIds(folderIds);
+    }
+
+    // Each batch locks its users' counter rows before recounting, the lock every delta takes: a change
+    // committed earlier is in the recount, one still open waits and applies its delta on top
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${usage.reconcile-interval:PT6H}", initialDelayString = "${usage.reconcile-interval:PT6H}")
+    public void reconcile() {
+        int users = 0;
+        int folders = 0;
+        long after = 0;
+        List<Long> batch;
+        while (!(batch = userUsageRepository.findUserIdsAfter(after, RECONCILE_BATCH)).isEmpty()) {
+            List<Long> userIds = batch;
+            int[] counts = transactionTemplate.execute(status -> {
+                userUsageRepository.createMissing(userIds);
+                userUsageRepository.lockAll(userIds);
+                return new int[]{userUsageRepository.reconcile(userIds), folderUsageRepository.reconcile(userIds)};
+            });
+            users += counts[0];
+            folders += counts[1];
+            after = batch.get(batch.size() - 1);
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            userUsageRepository.deleteOrphans();
+            folderUsageRepository.deleteOrphans();
+        });
+        log.info("reconciled usage counters users={} folders={}", users, folders);
+    }
+
+    // Sums the deltas per user and per folder first, so each counter row is written once. User rows
+    // are written before folder rows, the order reconcile() locks them in
+    private void apply(Collection<FileUsage> usages, int sign) {
+        Map<Long, long[]> users = new HashMap<>();
+        for (FileUsage usage : usages) {
+            boolean inTrash = usage.getDeleted();
+            long[] user = users.computeIfAbsent(usage.getUserId(), id -> new long[4]);
+            user[inTrash ? 2 : 0] += sign * usage.getFileCount();
+            user[inTrash ? 3 : 1] += sign * usage.getTotalBytes();
+        }
+        users.forEach((userId, d) -> userUsageRepository.add(userId, d[0], d[1], d[2], d[3]));
+        applyFolders(usages, sign);
+    }
+
+    private void applyFolders(Collection<FileUsage> usages, int sign) {
+        Map<Long, long[]> folders = new HashMap<>();
+        for (FileUsage usage : usages) {
+            if (usage.getFolderId() != null && !usage.getDeleted()) {
+                long[] counters = folders.computeIfAbsent(usage.getFolderId(), id -> new long[]{usage.getUserId(), 0, 0});
+                counters[1] += sign * usage.getFileCount();
+                counters[2] += sign * usage.getTotalBytes();
+            }
+        }
+        folders.forEach((folder, d) -> folderUsageRepository.add(folder, d[0], d[1], d[2]));
+    }
+
+    private Long quotaFor(User user) {
+        if (user.getStorageQuota() != null) {
+            return user.getStorageQuota();
+        }
+        return defaultQuota.toBytes() > 0 ? defaultQuota.toBytes() : null;
+    }
+}
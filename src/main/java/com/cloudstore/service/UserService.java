@@ -4,6 +4,7 @@ import com.cloudstore.dto.UpdateUserProfileRequest;
 import com.cloudstore.dto.UserProfileResponse;
 import com.cloudstore.model.User;
 import com.cloudstore.repository.UserRepository;
+import com.cloudstore.security.AuthenticatedUserCache;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -15,6 +16,7 @@ import org.springframework.transaction.annotation.Transactional;
 public class UserService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final AuthenticatedUserCache authenticatedUserCache;
 
     private User getCurrentUserEntity() {
         Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
@@ -33,38 +35,50 @@ public class UserService {
     }
 
     public UserProfileResponse getCurrentUser() {
-        User user = getCurrentUserEntity();
-        return new UserProfileResponse(
-                user.getId(),
-                user.getEmail(),
-                user.getName(),
-                user.isEmailVerified(),
-                user.getCreatedAt(),
-                user.getUpdatedAt()
-        );
+        return toResponse(getCurrentUserEntity());
+    }
+
+    // The principal may be the instance cached for other requests, so changes go to a fresh copy
+    private User loadCurrentUserForUpdate() {
+        return userRepository.findById(getCurrentUserEntity().getId())
+                .orElseThrow(() -> new RuntimeException("User not found"));
     }
 
     @Transactional
     public UserProfileResponse updateProfile(UpdateUserProfileRequest request) {
-        User user = getCurrentUserEntity();
+        User user = loadCurrentUserForUpdate();
         user.setName(request.getName());
-        userRepository.save(user);
-        return getCurrentUser();
+        userRepository.saveAndFlush(user); // so the response carries the new updatedAt
+        authenticatedUserCache.invalidateUser(user.getId());
+        return toResponse(user);
     }
 
     @Transactional
     public void deleteAccount() {
-        User user = getCurrentUserEntity();
+        User user = loadCurrentUserForUpdate();
         userRepository.delete(user);
+        authenticatedUserCache.invalidateUser(user.getId());
     }
 
     @Transactional
     public void changePassword(String currentPassword, String newPassword) {
-        User user = getCurrentUserEntity();
+        User user = loadCurrentUserForUpdate();
         if (!passwordEncoder.matches(currentPassword, user.getPassword())) {
             throw new RuntimeException("Current password is incorrect");
         }
         user.setPassword(passwordEncoder.encode(newPassword));
         userRepository.save(user);
+        authenticatedUserCache.invalidateUser(user.getId());
+    }
+
+    private UserProfileResponse toResponse(User user) {
+        return new UserProfileResponse(
+                user.getId(),
+                user.getEmail(),
+                user.getName(),
+                user.isEmailVerified(),
+                user.getCreatedAt(),
+                user.getUpdatedAt()
+        );
     }
 } 
\ No newline at end of file
@@ -0,0 +1,332 @@
+package com.cloudstore.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.DoubleConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming ffmpeg transcodes. ffmpeg reads the source itself where it can (a local path or the
+ * remote URL, both seekable, so files with a trailing moov atom work); sources with no local file
+ * are piped into stdin. The result is written to stdout in a streamable container, which the
+ * caller consumes as it is produced; nothing is staged in heap or temp files.
+ * stderr is drained on its own thread for progress, and a watchdog kills the process on timeout,
+ * stall or when the calling thread is interrupted (job cancellation).
+ */
+@Slf4j
+@Component
+public class VideoTranscoder {
+    private static final Pattern DURATION = Pattern.compile("Duration: (\\d+):(\\d{2}):(\\d{2}(?:\\.\\d+)?)");
+    private static final Pattern TIME = Pattern.compile("time=(\\d+):(\\d{2}):(\\d{2}(?:\\.\\d+)?)");
+    private static final int STDERR_TAIL_LINES = 20;
+
+    // Resolution ladder; the scale filter never upscales a smaller source
+    private static final Map<String, Integer> RESOLUTIONS = Map.of(
+            "2160p", 2160, "1440p", 1440, "1080p", 1080, "720p", 720, "480p", 480, "360p", 360);
+    // Muxers that can write to a pipe (mp4/mov as fragmented mp4)
+    private static final Set<String> STREAMABLE_FORMATS = Set.of("mp4", "mov", "webm", "mkv");
+
+    @Value("${compression.video.ffmpeg-path:ffmpeg}")
+    private String ffmpegPath;
+
+    @Value("${compression.video.timeout:2h}")
+    private Duration timeout;
+
+    @Value("${compression.video.stall-timeout:2m}")
+    private Duration stallTimeout;
+
+    @Value("${compression.video.preset:medium}")
+    private String encoderPreset;
+
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ffmpeg-watchdog");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @FunctionalInterface
+    public interface OutputSink<T> {
+        T consume(InputStream output) throws IOException;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Result<T> {
+        private final T value;
+        private final long size;
+    }
+
+    // Falls back to mp4 for containers that need a seekable output
+    public static String outputFormat(String requested, String extension) {
+        String format = requested != null && !requested.isEmpty() ? requested.toLowerCase() : extension;
+        return STREAMABLE_FORMATS.contains(format) ? format : "mp4";
+    }
+
+    /**
+     * Transcodes {@code input} into {@code format} and hands ffmpeg's stdout to {@code sink}. When
+     * {@code stdin} is given it is piped to ffmpeg (and closed) and {@code input} is ignored.
+     * Quality is CRF-based unless only a target bitrate (kbps) is given; {@code resolution} is a
+     * ladder step such as {@code 720p}. {@code progress} receives 0.0 - 1.0 once ffmpeg has reported
+     * the source duration.
+     */
+    public <T> Result<T> transcode(String input, InputStream stdin, String format, Integer crf, Integer bitrate,
+                                   String resolution, DoubleConsumer progress, OutputSink<T> sink)
+            throws IOException, InterruptedException {
+        Process process;
+        try {
+            process = new ProcessBuilder(buildCommand(stdin != null ? "pipe:0" : input, stdin != null,
+                    format, crf, bitrate, resolution)).start();
+        } catch (IOException e) {
+            if (stdin != null) {
+                stdin.close();
+            }
+            throw e;
+        }
+        if (stdin == null) {
+            process.getOutputStream().close(); // -nostdin; nothing to send
+        } else {
+            Thread pump = new Thread(() -> {
+                try (InputStream source = stdin; OutputStream target = process.getOutputStream()) {
+                    source.transferTo(target);
+                } catch (IOException e) {
+                    // ffmpeg stopped reading (failed or killed); its exit status reports why
+                }
+            }, "ffmpeg-stdin");
+            pump.setDaemon(true);
+            pump.start();
+        }
+
+        Thread worker = Thread.currentThread();
+        long startedAt = System.nanoTime();
+        AtomicLong lastActivity = new AtomicLong(startedAt); // stderr output or stdout consumed
+        AtomicReference<String> killedFor = new AtomicReference<>();
+        Deque<String> stderrTail = new ArrayDeque<>();
+        Thread drain = new Thread(() -> drainStderr(process.getErrorStream(), stderrTail, lastActivity, progress),
+                "ffmpeg-stderr");
+        drain.setDaemon(true);
+        drain.start();
+
+        ScheduledFuture<?> watch = watchdog.scheduleWithFixedDelay(() -> {
+            long now = System.nanoTime();
+            String reason = null;
+            if (worker.isInterrupted()) {
+                reason = "cancelled";
+            } else if (now - startedAt > timeout.toNanos()) {
+                reason = "timed out after " + timeout;
+            } else if (now - lastActivity.get() > stallTimeout.toNanos()) {
+                reason = "stalled for " + stallTimeout;
+            }
+            if (reason != null && process.isAlive()) {
+                killedFor.set(reason);
+                process.destroyForcibly(); // closes stdout, so the sink sees end of stream
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+
+        try {
+            T value;
+            CountingInputStream out = new CountingInputStream(process.getInputStream(), lastActivity);
+            try (out) {
+                value = sink.consume(out);
+            }
+            int exitCode = process.waitFor();
+            drain.join(TimeUnit.SECONDS.toMillis(5));
+            if (killedFor.get() != null) {
+                if ("cancelled".equals(killedFor.get())) {
+                    throw new InterruptedException("Transcode cancelled");
+                }
+                throw new IOException("ffmpeg " + killedFor.get());
+            }
+            if (exitCode != 0) {
+                String tail;
+                synchronized (stderrTail) {
+                    tail = String.join("\n", stderrTail);
+                }
+                throw new IOException("ffmpeg exited with code " + exitCode + ": " + tail);
+            }
+            return new Result<>(value, out.getCount());
+        } finally {
+            watch.cancel(false);
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    List<String> buildCommand(String input, boolean readStdin, String format, Integer crf, Integer bitrate, String resolution) {
+        List<String> cmd = new ArrayList<>(List.of(ffmpegPath, "-hide_banner"));
+        if (!readStdin) {
+            cmd.add("-nostdin");
+        }
+        // Inputs can reference further resources (playlists, concat lists), so ffmpeg may only open
+        // protocols of the input's own kind
+        cmd.addAll(List.of("-protocol_whitelist", protocolWhitelist(input, readStdin), "-y", "-i", input));
+        Integer height = resolution != null ? RESOLUTIONS.get(resolution.toLowerCase()) : null;
+        if (height != null) {
+            cmd.addAll(List.of("-vf", "scale=-2:'min(" + height + ",ih)'"));
+        }
+        boolean webm = "webm".equals(format);
+        if (webm) {
+            cmd.addAll(List.of("-c:v", "libvpx-vp9", "-row-mt", "1", "-c:a", "libopus"));
+        } else {
+            cmd.addAll(List.of("-c:v", "libx264", "-preset", encoderPreset, "-pix_fmt", "yuv420p", "-c:a", "aac"));
+        }
+        if (crf == null && bitrate != null) {
+            cmd.addAll(List.of("-b:v", bitrate + "k"));
+        } else {
+            cmd.addAll(List.of("-crf", String.valueOf(crf != null ? crf : webm ? 32 : 23)));
+            if (webm) {
+                cmd.addAll(List.of("-b:v", "0")); // constant quality mode for VP9
+            }
+            if (bitrate != null) {
+                cmd.addAll(List.of("-maxrate", bitrate + "k", "-bufsize", (bitrate * 2) + "k"));
+            }
+        }
+        switch (format) {
+            case "webm" -> cmd.addAll(List.of("-f", "webm"));
+            case "mkv" -> cmd.addAll(List.of("-f", "matroska"));
+            default -> cmd.addAll(List.of("-movflags", "frag_keyframe+empty_moov+default_base_moof", "-f", "mp4"));
+        }
+        cmd.add("pipe:1");
+        return cmd;
+    }
+
+    // Only stdin, an absolute local path or an http(s) URL; anything else is refused before ffmpeg runs
+    static String protocolWhitelist(String input, boolean readStdin) {
+        if (readStdin) {
+            if (!"pipe:0".equals(input)) {
+                throw new RuntimeException("Invalid ffmpeg input");
+            }
+            return "file,pipe";
+        }
+        if (input == null) {
+            throw new RuntimeException("Invalid ffmpeg input");
+        }
+        if (input.startsWith("file:")) {
+            if (!Paths.get(input.substring("file:".length())).isAbsolute()) {
+                throw new RuntimeException("Invalid ffmpeg input");
+            }
+            return "file,pipe";
+        }
+        URI uri;
+        try {
+            uri = new URI(input);
+        } catch (URISyntaxException e) {
+            throw new RuntimeException("Invalid ffmpeg input");
+        }
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase() : "";
+        if ((!scheme.equals("https") && !scheme.equals("http")) || uri.getHost() == null) {
+            throw new RuntimeException("Invalid ffmpeg input");
+        }
+        return "http,https,tcp,tls";
+    }
+
+    // Stats lines are terminated by \r, so split on both line endings
+    private void drainStderr(InputStream stderr, Deque<String> tail, AtomicLong lastActivity, DoubleConsumer progress) {
+        double durationSeconds = 0;
+        StringBuilder line = new StringBuilder();
+        try (Reader reader = new InputStreamReader(stderr, StandardCharsets.UTF_8)) {
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (c != '\r' && c != '\n') {
+                    line.append((char) c);
+                    continue;
+                }
+                if (line.length() == 0) {
+                    continue;
+                }
+                String text = line.toString();
+                line.setLength(0);
+                lastActivity.set(System.nanoTime());
+                synchronized (tail) {
+                    tail.addLast(text);
+                    if (tail.size() > STDERR_TAIL_LINES) {
+                        tail.removeFirst();
+                    }
+                }
+                Matcher m = DURATION.matcher(text);
+                if (durationSeconds == 0 && m.find()) {
+                    durationSeconds = seconds(m);
+                    continue;
+                }
+                m = TIME.matcher(text);
+                if (durationSeconds > 0 && m.find()) {
+                    progress.accept(Math.min(1.0, seconds(m) / durationSeconds));
+                }
+            }
+        } catch (IOException e) {
+            log.debug("ffmpeg stderr closed error={}", e.getMessage());
+        }
+    }
+
+    private static double seconds(Matcher m) {
+        return Integer.parseInt(m.group(1)) * 3600 + Integer.parseInt(m.group(2)) * 60 + Double.parseDouble(m.group(3));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        watchdog.shutdownNow();
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final AtomicLong lastActivity;
+        private long count;
+
+        CountingInputStream(InputStream in, AtomicLong lastActivity) {
+            super(in);
+            this.lastActivity = lastActivity;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+                lastActivity.set(System.nanoTime());
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+                lastActivity.set(System.nanoTime());
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.cloudstore.storage;
+
+import com.cloudstore.model.Blob;
+import com.cloudstore.repository.BlobRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Content-addressed storage for uploaded bytes. Each distinct content is kept once, keyed by its
+ * SHA-256, in the {@link StorageBackend} named on its {@code blobs} row (the default backend for new
+ * content), and {@code blobs.ref_count} tracks how many {@code File} rows point at it. The hash is
+ * computed while the upload streams to a temp file; if the same content is already stored, the
+ * temp file is dropped instead of being kept. Bytes are written and hashed with no transaction
+ * open; only taking the reference and moving the temp file into place run in a short one (or join
+ * the caller's).
+ */
+@Component
+@RequiredArgsConstructor
+public class BlobStore {
+    private static final String BLOB_DIR = "blobs";
+    private static final String TEMP_DIR = "tmp";
+
+    private final BlobRepository blobRepository;
+    private final UploadStreamWriter uploadStreamWriter;
+    private final StorageBackendRegistry storageBackendRegistry;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${file.upload-dir:uploads}")
+    private String uploadDir;
+
+    /**
+     * Stores the content of {@code source}. When the client supplies the SHA-256 it expects and a
+     * blob with that hash already exists, the content is only hashed to prove the claim and nothing
+     * is written to disk. A failure rolls back the reference taken on the blob and leaves no temp file.
+     */
+    public StoredBlob store(InputStreamSource source, String expectedHash) throws IOException {
+        if (expectedHash != null && !expectedHash.isBlank()) {
+            String claimed = expectedHash.trim().toLowerCase(Locale.ROOT);
+            Optional<Blob> existing = blobRepository.findById(claimed);
+            if (existing.isPresent() && backendFor(existing.get()).stat(claimed).isPresent()) {
+                String actual;
+                try (InputStream in = source.getInputStream()) {
+                    actual = hash(in);
+                }
+                if (actual.equals(claimed)
+                        && new TransactionTemplate(transactionManager).execute(status -> blobRepository.incrementRefCount(claimed)) == 1) {
+                    Blob blob = existing.get();
+                    return toStoredBlob(blob.getHash(), backendFor(blob), blob.getSize(), true);
+                }
+            }
+        }
+        Path temp = newTempPath();
+        try {
+            MessageDigest digest = newDigest();
+            long size;
+            try (InputStream in = new DigestInputStream(source.getInputStream(), digest)) {
+                size = uploadStreamWriter.write(in, temp);
+            }
+            return placeInTransaction(temp, HexFormat.of().formatHex(digest.digest()), size);
+        } finally {
+            // Already moved into the backend on success; on any failure the partial content goes
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Takes ownership of a fully written file (e.g. an assembled chunked upload), moving it into
+     * the store or discarding it if identical content is already stored.
+     */
+    public StoredBlob adopt(Path file) throws IOException {
+        long size = Files.size(file);
+        String hash;
+        try (InputStream in = Files.newInputStream(file)) {
+            hash = hash(in);
+        }
+        return placeInTransaction(file, hash, size);
+    }
+
+    /**
+     * Drops one reference to {@code hash}; the bytes are deleted from their backend once the last
+     * reference is gone and the surrounding transaction has committed, unless the same content has
+     * been stored again by then. Returns the number of bytes freed, 0 while other references remain.
+     */
+    @Transactional
+    public long release(String hash) {
+        if (blobRepository.decrementRefCount(hash) == 0) {
+            return 0;
+        }
+        Optional<Blob> blob = blobRepository.findById(hash);
+        if (blob.isPresent() && blobRepository.deleteIfUnreferenced(hash) == 1) {
+            StorageBackend backend = backendFor(blob.get());
+            long size = blob.get().getSize() != null ? blob.get().getSize() : 0;
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        deleteUnlessStoredAgain(backend, hash, size);
+                    }
+                });
+            } else {
+                deleteUnlessStoredAgain(backend, hash, size);
+            }
+            return size;
+        }
+        return 0;
+    }
+
+    public StorageBackend backendFor(Blob blob) {
+        return storageBackendRegistry.get(blob.getStorageBackend());
+    }
+
+    // The checked IOException is carried out of the callback unchecked, so the reference is rolled back
+    private StoredBlob placeInTransaction(Path temp, String hash, long size) throws IOException {
+        try {
+            return new TransactionTemplate(transactionManager).execute(status -> {
+                try {
+                    return place(temp, hash, size);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private StoredBlob place(Path temp, String hash, long size) throws IOException {
+        // Take the reference first. The upsert waits on a release's placeholder row (see
+        // deleteUnlessStoredAgain), so the stat below never sees bytes that are about to be deleted
+        String defaultBackend = storageBackendRegistry.getDefault().getName();
+        blobRepository.acquire(hash, size, defaultBackend + ":" + hash, defaultBackend);
+        // Identical content stored earlier stays in the backend it was written to
+        StorageBackend backend = blobRepository.findById(hash)
+                .map(this::backendFor)
+                .orElse(storageBackendRegistry.getDefault());
+        if (backend.stat(hash).isPresent()) {
+            Files.deleteIfExists(temp);
+            return toStoredBlob(hash, backend, size, true);
+        }
+        backend.putFile(hash, temp);
+        return toStoredBlob(hash, backend, size, false);
+    }
+
+    // Runs once the releasing transaction has committed, so in a transaction of its own. A placeholder
+    // row without references is inserted before the bytes go: if the hash has been stored again in the
+    // meantime the insert finds that row (after waiting for it to commit) and nothing is deleted;
+    // otherwise concurrent place() calls block on the placeholder until the bytes are gone and the
+    // row is removed again, and then write the content afresh.
+    private void deleteUnlessStoredAgain(StorageBackend backend, String hash, long size) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transaction.executeWithoutResult(status -> {
+            if (blobRepository.insertPlaceholder(hash, size, backend.getName() + ":" + hash, backend.getName()) == 1) {
+                deleteQuietly(backend, hash);
+                blobRepository.deleteIfUnreferenced(hash);
+            }
+        });
+    }
+
+    private static StoredBlob toStoredBlob(String hash, StorageBackend backend, long size, boolean deduplicated)
+            throws IOException {
+        return new StoredBlob(hash, backend.getName(), backend.localPath(hash).orElse(null), size, deduplicated);
+    }
+
+    private Path newTempPath() throws IOException {
+        Path dir = Paths.get(uploadDir, BLOB_DIR, TEMP_DIR);
+        Files.createDirectories(dir);
+        return dir.resolve(UUID.randomUUID().toString());
+    }
+
+    private String hash(InputStream in) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[uploadStreamWriter.getBufferSize()];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void deleteQuietly(StorageBackend backend, String hash) {
+        try {
+            backend.delete(hash);
+        } catch (IOException e) {
+            // An unreferenced blob file is never served; removing it again later is harmless
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.cloudstore.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Outbound object storage for files that are kept off the server (compression results, for now).
+ * Implementations are singletons that reuse their HTTP connections; select one with
+ * {@code cloud.storage.provider} ({@code cloudinary} by default, {@code local} for development and tests).
+ */
+public interface CloudStorageClient {
+
+    // resourceType is image, video, raw or auto
+    CloudUpload upload(byte[] data, String publicId, String resourceType) throws IOException;
+
+    // Uploads a stream of unknown length, in parts when it is large
+    CloudUpload upload(InputStream in, String publicId, String resourceType) throws IOException;
+
+    void delete(String publicId, String resourceType) throws IOException;
+
+    // The file behind one of this client's own URLs, when its objects are kept on this server
+    default Optional<Path> localPath(String url) {
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,12 @@
+package com.cloudstore.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class CloudUpload {
+    private String url;
+    private String publicId;
+    private long size;
+}
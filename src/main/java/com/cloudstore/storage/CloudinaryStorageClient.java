@@ -0,0 +1,217 @@
+package com.cloudstore.storage;
+
+import com.cloudinary.Cloudinary;
+import com.cloudinary.Uploader;
+import com.cloudinary.utils.ObjectUtils;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cloudinary-backed {@link CloudStorageClient}. One {@link Cloudinary}/{@link Uploader} pair is built
+ * at startup, so every upload goes through the same pooled keep-alive HTTP client. Payloads larger
+ * than {@code cloud.storage.chunk-size} use Cloudinary's chunked upload protocol (parts tagged with
+ * {@code X-Unique-Upload-Id} and {@code Content-Range}); all parts but the last are sent in parallel,
+ * and the last one, which completes the asset, is sent once the others have landed. Network errors
+ * and 5xx responses are retried with exponential backoff.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "cloud.storage.provider", havingValue = "cloudinary", matchIfMissing = true)
+public class CloudinaryStorageClient implements CloudStorageClient {
+    private static final int MIN_CHUNK_SIZE = 5 * 1024 * 1024; // Cloudinary rejects smaller non-final parts
+
+    private final Uploader uploader;
+    private final ExecutorService partExecutor;
+    private final int chunkSize;
+    private final int parallelism;
+    private final int maxAttempts;
+    private final long backoffMillis;
+
+    public CloudinaryStorageClient(@Value("${CLOUDINARY_URL:}") String cloudinaryUrl,
+                                   @Value("${cloud.storage.chunk-size:10485760}") int chunkSize,
+                                   @Value("${cloud.storage.upload-parallelism:3}") int parallelism,
+                                   @Value("${cloud.storage.upload-threads:8}") int uploadThreads,
+                                   @Value("${cloud.storage.max-attempts:3}") int maxAttempts,
+                                   @Value("${cloud.storage.retry-backoff-ms:500}") long backoffMillis) {
+        Cloudinary cloudinary;
+        if (cloudinaryUrl != null && !cloudinaryUrl.isEmpty()) {
+            cloudinary = new Cloudinary(cloudinaryUrl);
+        } else {
+            // fallback to explicit config if env var is not set
+            cloudinary = new Cloudinary(ObjectUtils.asMap(
+                "cloud_name", "ds5gugfv0",
+                "api_key", "735146938571227",
+                "api_secret", "ywd7M8seRHCTf4YG6liBeN8Bw3E"
+            ));
+        }
+        // Each uploader() call initialises a fresh HTTP client, so keep exactly one
+        this.uploader = cloudinary.uploader();
+        this.chunkSize = Math.max(chunkSize, MIN_CHUNK_SIZE);
+        this.parallelism = Math.max(1, parallelism);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMillis = backoffMillis;
+        AtomicInteger counter = new AtomicInteger();
+        this.partExecutor = Executors.newFixedThreadPool(Math.max(1, uploadThreads), r -> {
+            Thread t = new Thread(r, "cloud-upload-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public CloudUpload upload(byte[] data, String publicId, String resourceType) throws IOException {
+        if (data.length <= chunkSize) {
+            Map<?, ?> result = withRetry(() -> uploader.upload(data, ObjectUtils.asMap(
+                    "resource_type", resourceType,
+                    "public_id", publicId)));
+            return toUpload(result, data.length);
+        }
+        return uploadInParts(new ChunkSource() {
+            private int offset;
+
+            @Override
+            public byte[] next() {
+                if (offset >= data.length) {
+                    return new byte[0];
+                }
+                int end = Math.min(offset + chunkSize, data.length);
+                byte[] chunk = Arrays.copyOfRange(data, offset, end);
+                offset = end;
+                return chunk;
+            }
+        }, publicId, resourceType);
+    }
+
+    @Override
+    public CloudUpload upload(InputStream in, String publicId, String resourceType) throws IOException {
+        return uploadInParts(() -> in.readNBytes(chunkSize), publicId, resourceType);
+    }
+
+    @Override
+    public void delete(String publicId, String resourceType) throws IOException {
+        withRetry(() -> uploader.destroy(publicId, ObjectUtils.asMap("resource_type", resourceType)));
+    }
+
+    // Reads one part ahead so the final part (which must carry the total size) is known before it is sent.
+    // At most `parallelism` parts are in flight, which bounds memory to (parallelism + 2) * chunk-size.
+    private CloudUpload uploadInParts(ChunkSource source, String publicId, String resourceType) throws IOException {
+        byte[] current = source.next();
+        byte[] next = current.length == chunkSize ? source.next() : new byte[0];
+        if (next.length == 0) {
+            byte[] single = current;
+            Map<?, ?> result = withRetry(() -> uploader.upload(single, ObjectUtils.asMap(
+                    "resource_type", resourceType,
+                    "public_id", publicId)));
+            return toUpload(result, single.length);
+        }
+
+        String uploadId = UUID.randomUUID().toString();
+        List<Future<?>> inFlight = new ArrayList<>();
+        long offset = 0;
+        try {
+            while (next.length > 0) {
+                if (inFlight.size() >= parallelism) {
+                    inFlight.remove(0).get();
+                }
+                byte[] part = current;
+                long start = offset;
+                inFlight.add(partExecutor.submit(() -> sendPart(part, start, -1, uploadId, publicId, resourceType)));
+                offset += current.length;
+                current = next;
+                next = current.length == chunkSize ? source.next() : new byte[0];
+            }
+            for (Future<?> future : inFlight) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            inFlight.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IOException("Upload interrupted", e);
+        } catch (ExecutionException e) {
+            inFlight.forEach(f -> f.cancel(true));
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+        long total = offset + current.length;
+        Map<?, ?> result = sendPart(current, offset, total, uploadId, publicId, resourceType);
+        return toUpload(result, total);
+    }
+
+    private Map<?, ?> sendPart(byte[] part, long start, long total, String uploadId, String publicId,
+                               String resourceType) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("X-Unique-Upload-Id", uploadId);
+        headers.put("Content-Range", "bytes " + start + "-" + (start + part.length - 1) + "/" + total);
+        Map options = ObjectUtils.asMap(
+                "resource_type", resourceType,
+                "public_id", publicId,
+                "extra_headers", headers);
+        return withRetry(() -> uploader.callApi("upload", uploader.buildUploadParams(options), options, part));
+    }
+
+    private Map<?, ?> withRetry(CloudCall call) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.execute();
+            } catch (IOException | RuntimeException e) {
+                if (attempt >= maxAttempts || !isRetryable(e)) {
+                    throw e;
+                }
+                long delay = backoffMillis * (1L << (attempt - 1));
+                delay += ThreadLocalRandom.current().nextLong(delay / 2 + 1); // jitter so parallel parts don't retry in lockstep
+                log.warn("cloud upload attempt failed, retrying attempt={} delayMs={} error={}", attempt, delay, e.getMessage());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Upload interrupted", ie);
+                }
+            }
+        }
+    }
+
+    // Network failures and server-side errors are worth another try; rejected requests are not
+    private static boolean isRetryable(Exception e) {
+        if (e instanceof IOException) {
+            return true;
+        }
+        String message = e.getMessage();
+        return message != null && message.startsWith("Server returned unexpected status code - 5");
+    }
+
+    private static CloudUpload toUpload(Map<?, ?> result, long size) {
+        return new CloudUpload((String) result.get("secure_url"), (String) result.get("public_id"), size);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        partExecutor.shutdownNow();
+    }
+
+    @FunctionalInterface
+    private interface CloudCall {
+        Map<?, ?> execute() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ChunkSource {
+        byte[] next() throws IOException; // empty when exhausted
+    }
+}
@@ -0,0 +1,66 @@
+package com.cloudstore.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Heap-backed backend for tests and throwaway environments ({@code storage.memory.enabled=true}).
+ * Everything is lost on restart.
+ */
+public class InMemoryStorageBackend implements StorageBackend {
+    public static final String NAME = "memory";
+
+    private final Map<String, Entry> objects = new ConcurrentHashMap<>();
+
+    private record Entry(byte[] data, long lastModified) {
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public long put(String key, InputStream in) throws IOException {
+        byte[] data = in.readAllBytes();
+        objects.put(key, new Entry(data, System.currentTimeMillis()));
+        return data.length;
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        return new ByteArrayInputStream(entry(key).data());
+    }
+
+    @Override
+    public InputStream getRange(String key, long offset, long length) throws IOException {
+        byte[] data = entry(key).data();
+        int start = (int) Math.min(offset, data.length);
+        int count = (int) Math.min(length, data.length - start);
+        return new ByteArrayInputStream(data, start, count);
+    }
+
+    @Override
+    public boolean delete(String key) {
+        return objects.remove(key) != null;
+    }
+
+    @Override
+    public Optional<ObjectStat> stat(String key) {
+        Entry entry = objects.get(key);
+        return entry == null ? Optional.empty() : Optional.of(new ObjectStat(entry.data().length, entry.lastModified()));
+    }
+
+    private Entry entry(String key) throws NoSuchFileException {
+        Entry entry = objects.get(key);
+        if (entry == null) {
+            throw new NoSuchFileException(key);
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,72 @@
+package com.cloudstore.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+/**
+ * Stand-in {@link CloudStorageClient} that keeps "cloud" objects under a local directory and hands
+ * out {@code file:} URLs, for development and tests without Cloudinary credentials
+ * ({@code cloud.storage.provider=local}).
+ */
+@Component
+@ConditionalOnProperty(name = "cloud.storage.provider", havingValue = "local")
+public class LocalCloudStorageClient implements CloudStorageClient {
+    private final Path root;
+    private final UploadStreamWriter uploadStreamWriter;
+
+    public LocalCloudStorageClient(@Value("${cloud.storage.local-dir:uploads/cloud}") String localDir,
+                                   UploadStreamWriter uploadStreamWriter) {
+        this.root = Paths.get(localDir).toAbsolutePath().normalize();
+        this.uploadStreamWriter = uploadStreamWriter;
+    }
+
+    @Override
+    public CloudUpload upload(byte[] data, String publicId, String resourceType) throws IOException {
+        return upload(new ByteArrayInputStream(data), publicId, resourceType);
+    }
+
+    @Override
+    public CloudUpload upload(InputStream in, String publicId, String resourceType) throws IOException {
+        Path target = resolve(publicId, resourceType);
+        long size = uploadStreamWriter.write(in, target);
+        return new CloudUpload(target.toUri().toString(), publicId, size);
+    }
+
+    @Override
+    public void delete(String publicId, String resourceType) throws IOException {
+        Files.deleteIfExists(resolve(publicId, resourceType));
+    }
+
+    // Only file: URLs under the storage root; anything else on the filesystem is not ours to serve
+    @Override
+    public Optional<Path> localPath(String url) {
+        try {
+            URI uri = URI.create(url);
+            if (!"file".equalsIgnoreCase(uri.getScheme())) {
+                return Optional.empty();
+            }
+            Path path = Paths.get(uri).toAbsolutePath().normalize();
+            return path.startsWith(root) ? Optional.of(path) : Optional.empty();
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    private Path resolve(String publicId, String resourceType) {
+        Path target = root.resolve(resourceType).resolve(publicId).normalize();
+        if (!target.startsWith(root)) {
+            throw new RuntimeException("Invalid public id");
+        }
+        return target;
+    }
+}
@@ -0,0 +1,11 @@
+package com.cloudstore.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ObjectStat {
+    private long size;
+    private long lastModified; // epoch millis
+}
@@ -0,0 +1,416 @@
+package com.cloudstore.storage;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Read-through disk cache for files hosted at a URL (Cloudinary or external). Objects are fetched
+ * once with a shared, pooled {@link HttpClient} and kept under {@code remote.cache.dir}; after
+ * {@code revalidate-after} they are revalidated with a conditional request (ETag/Last-Modified),
+ * so unchanged objects cost one round trip and no transfer. The cache is bounded by
+ * {@code remote.cache.max-size} with least-recently-used eviction. If the origin is unreachable a
+ * stale copy is served rather than failing the download. {@code read-timeout} bounds the wait for
+ * response headers only; the body is cut off when it stalls for {@code idle-timeout} or is still
+ * arriving after {@code max-duration}, so a slow origin can't hold a fetch lock forever.
+ */
+@Slf4j
+@Component
+public class RemoteFileCache {
+    private static final String DATA_SUFFIX = ".data";
+    private static final String META_SUFFIX = ".meta";
+    private static final int OPEN_ATTEMPTS = 3;
+
+    private final HttpClient httpClient;
+    private final Path cacheDir;
+    private final long maxBytes;
+    private final Duration readTimeout;
+    private final Duration idleTimeout;
+    private final Duration maxDuration;
+    private final Duration revalidateAfter;
+    private final UploadStreamWriter uploadStreamWriter;
+    private final CloudStorageClient cloudStorageClient;
+    private final RemoteUrlPolicy remoteUrlPolicy;
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, CachedObject> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final ReentrantLock[] fetchLocks = new ReentrantLock[64];
+    // Closes body streams that missed their deadline; a blocked read then fails instead of waiting
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "remote-fetch-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long totalBytes;
+
+    public RemoteFileCache(@Value("${remote.cache.dir:uploads/remote-cache}") String cacheDir,
+                           @Value("${remote.cache.max-size:10GB}") DataSize maxSize,
+                           @Value("${remote.cache.revalidate-after:5m}") Duration revalidateAfter,
+                           @Value("${remote.fetch.connect-timeout:5s}") Duration connectTimeout,
+                           @Value("${remote.fetch.read-timeout:60s}") Duration readTimeout,
+                           @Value("${remote.fetch.idle-timeout:30s}") Duration idleTimeout,
+                           @Value("${remote.fetch.max-duration:30m}") Duration maxDuration,
+                           UploadStreamWriter uploadStreamWriter,
+                           CloudStorageClient cloudStorageClient,
+                           RemoteUrlPolicy remoteUrlPolicy) {
+        this.cacheDir = Paths.get(cacheDir);
+        this.maxBytes = maxSize.toBytes();
+        this.revalidateAfter = revalidateAfter;
+        this.readTimeout = readTimeout;
+        this.idleTimeout = idleTimeout;
+        this.maxDuration = maxDuration;
+        this.uploadStreamWriter = uploadStreamWriter;
+        this.cloudStorageClient = cloudStorageClient;
+        this.remoteUrlPolicy = remoteUrlPolicy;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                // A redirect could lead anywhere, past the host allowlist
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+        for (int i = 0; i < fetchLocks.length; i++) {
+            fetchLocks[i] = new ReentrantLock();
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class CachedObject {
+        private final String key;
+        private final Path path;
+        private final long size;
+        private final String etag;
+        private final String lastModified;
+        @Setter
+        private volatile long validatedAt;
+    }
+
+    // An open handle on a cached object; it stays readable after the entry is evicted
+    public record OpenedFile(FileChannel channel, long size, long lastModified) {
+        public InputStream inputStream() {
+            return Channels.newInputStream(channel);
+        }
+    }
+
+    // Rebuilds the index from disk, oldest access first, so a restart keeps the warm cache
+    @PostConstruct
+    void loadIndex() throws IOException {
+        Files.createDirectories(cacheDir);
+        List<CachedObject> found = new ArrayList<>();
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            for (Path data : (Iterable<Path>) files.filter(p -> p.toString().endsWith(DATA_SUFFIX))::iterator) {
+                String key = data.getFileName().toString().replace(DATA_SUFFIX, "");
+                Path meta = cacheDir.resolve(key + META_SUFFIX);
+                if (!Files.exists(meta)) {
+                    Files.deleteIfExists(data);
+                    continue;
+                }
+                Properties properties = new Properties();
+                try (InputStream in = Files.newInputStream(meta)) {
+                    properties.load(in);
+                }
+                found.add(new CachedObject(key, data, Files.size(data), properties.getProperty("etag"),
+                        properties.getProperty("lastModified"), 0));
+            }
+        }
+        found.sort(Comparator.comparingLong(o -> lastAccess(o.getPath())));
+        synchronized (entries) {
+            for (CachedObject object : found) {
+                entries.put(object.getKey(), object);
+                totalBytes += object.getSize();
+            }
+        }
+        deleteStrayTempFiles();
+    }
+
+    /**
+     * Returns a local copy of {@code url}, fetching or revalidating it as needed. Objects of the
+     * local cloud storage stand-in are resolved by that client; any other URL must pass
+     * {@link RemoteUrlPolicy}, so only https origins on the allowlist are ever requested.
+     */
+    public Path fetch(String url) throws IOException {
+        Optional<Path> local = cloudStorageClient.localPath(url);
+        if (local.isPresent()) {
+            return local.get();
+        }
+        if (!remoteUrlPolicy.isAllowed(url)) {
+            throw new IOException("File URL not allowed");
+        }
+        URI uri = URI.create(url);
+        String key = keyFor(url);
+        ReentrantLock lock = fetchLocks[Math.floorMod(key.hashCode(), fetchLocks.length)];
+        lock.lock();
+        try {
+            CachedObject cached;
+            synchronized (entries) {
+                cached = entries.get(key);
+            }
+            if (cached != null && !Files.exists(cached.getPath())) {
+                remove(key);
+                cached = null;
+            }
+            if (cached != null && System.currentTimeMillis() - cached.getValidatedAt() < revalidateAfter.toMillis()) {
+                return cached.getPath();
+            }
+            try {
+                return download(uri, key, cached).getPath();
+            } catch (IOException e) {
+                if (cached != null) {
+                    log.warn("origin unavailable, serving cached copy url={} error={}", uri.getHost(), e.getMessage());
+                    return cached.getPath();
+                }
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Like {@link #fetch} but returns the object already opened. Eviction can delete a cached file
+     * at any time; once opened it stays readable, and a file deleted between fetch and open is
+     * fetched again.
+     */
+    public OpenedFile open(String url) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            Path path = fetch(url);
+            try {
+                FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    return new OpenedFile(channel, channel.size(), attributes.lastModifiedTime().toMillis());
+                } catch (IOException e) {
+                    channel.close();
+                    throw e;
+                }
+            } catch (NoSuchFileException e) {
+                if (attempt == OPEN_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("cached object evicted before it was opened, fetching again path={}", path);
+            }
+        }
+    }
+
+    private CachedObject download(URI uri, String key, CachedObject cached) throws IOException {
+        if (!"https".equalsIgnoreCase(uri.getScheme()) && !"http".equalsIgnoreCase(uri.getScheme())) {
+            throw new IOException("Only HTTP(S) URLs can be fetched");
+        }
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(readTimeout).GET();
+        if (cached != null && cached.getEtag() != null) {
+            request.header("If-None-Match", cached.getEtag());
+        }
+        if (cached != null && cached.getLastModified() != null) {
+            request.header("If-Modified-Since", cached.getLastModified());
+        }
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching remote file", e);
+        }
+        try (DeadlineInputStream body = new DeadlineInputStream(response.body())) {
+            if (response.statusCode() == 304 && cached != null) {
+                cached.setValidatedAt(System.currentTimeMillis());
+                return cached;
+            }
+            if (response.statusCode() != 200) {
+                throw new IOException("Remote file request failed with status " + response.statusCode());
+            }
+            Path data = cacheDir.resolve(key + DATA_SUFFIX);
+            long size;
+            ScheduledFuture<?> check = watchdog.scheduleAtFixedRate(body::closeIfExpired, 1, 1, TimeUnit.SECONDS);
+            try {
+                size = uploadStreamWriter.write(body, data);
+            } catch (IOException e) {
+                if (body.expired) {
+                    throw new IOException("Remote file body timed out", e);
+                }
+                throw e;
+            } finally {
+                check.cancel(false);
+            }
+            String etag = response.headers().firstValue("ETag").orElse(null);
+            String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+            writeMeta(key, uri, etag, lastModified);
+            CachedObject object = new CachedObject(key, data, size, etag, lastModified, System.currentTimeMillis());
+            synchronized (entries) {
+                CachedObject previous = entries.put(key, object);
+                totalBytes += size - (previous != null ? previous.getSize() : 0);
+            }
+            evict(key);
+            return object;
+        }
+    }
+
+    // Tracks when bytes last arrived so the watchdog can tell a stalled or overlong body from a live one
+    private class DeadlineInputStream extends FilterInputStream {
+        private final long startedAt = System.nanoTime();
+        private volatile long lastProgressAt = startedAt;
+        private volatile boolean expired;
+
+        DeadlineInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                lastProgressAt = System.nanoTime();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                lastProgressAt = System.nanoTime();
+            }
+            return n;
+        }
+
+        void closeIfExpired() {
+            long now = System.nanoTime();
+            if (expired || (now - lastProgressAt < idleTimeout.toNanos() && now - startedAt < maxDuration.toNanos())) {
+                return;
+            }
+            expired = true;
+            try {
+                close();
+            } catch (IOException e) {
+                log.warn("could not close timed out remote body error={}", e.getMessage());
+            }
+        }
+    }
+
+    private void writeMeta(String key, URI uri, String etag, String lastModified) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("url", uri.toString());
+        if (etag != null) {
+            properties.setProperty("etag", etag);
+        }
+        if (lastModified != null) {
+            properties.setProperty("lastModified", lastModified);
+        }
+        Path temp = cacheDir.resolve(key + META_SUFFIX + "." + UUID.randomUUID() + ".part");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            properties.store(out, null);
+        }
+        Files.move(temp, cacheDir.resolve(key + META_SUFFIX), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Drops least recently used objects until the cache fits, never the one just fetched
+    private void evict(String keep) {
+        List<CachedObject> victims = new ArrayList<>();
+        synchronized (entries) {
+            Iterator<CachedObject> it = entries.values().iterator();
+            while (totalBytes > maxBytes && it.hasNext()) {
+                CachedObject object = it.next();
+                if (object.getKey().equals(keep)) {
+                    continue;
+                }
+                it.remove();
+                totalBytes -= object.getSize();
+                victims.add(object);
+            }
+        }
+        for (CachedObject object : victims) {
+            deleteFiles(object.getKey());
+        }
+    }
+
+    private void remove(String key) {
+        synchronized (entries) {
+            CachedObject removed = entries.remove(key);
+            if (removed != null) {
+                totalBytes -= removed.getSize();
+            }
+        }
+        deleteFiles(key);
+    }
+
+    private void deleteFiles(String key) {
+        try {
+            Files.deleteIfExists(cacheDir.resolve(key + DATA_SUFFIX));
+            Files.deleteIfExists(cacheDir.resolve(key + META_SUFFIX));
+        } catch (IOException e) {
+            log.warn("could not delete cached object key={} error={}", key, e.getMessage());
+        }
+    }
+
+    private void deleteStrayTempFiles() throws IOException {
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            for (Path path : (Iterable<Path>) files.filter(p -> p.toString().endsWith(".part"))::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        watchdog.shutdownNow();
+    }
+
+    private static long lastAccess(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).lastAccessTime().toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static String keyFor(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(url.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.cloudstore.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Decides which file URLs the server will store and fetch. Remote URLs must be https on one of
+ * {@code remote.fetch.allowed-hosts} (or a subdomain of one); {@code file:} URLs are accepted only
+ * when the active {@link CloudStorageClient} owns them, so a stored URL can never point the server
+ * at an internal host or an arbitrary local file.
+ */
+@Component
+public class RemoteUrlPolicy {
+    private final CloudStorageClient cloudStorageClient;
+    private final List<String> allowedHosts;
+
+    public RemoteUrlPolicy(CloudStorageClient cloudStorageClient,
+                           @Value("${remote.fetch.allowed-hosts:res.cloudinary.com}") List<String> allowedHosts) {
+        this.cloudStorageClient = cloudStorageClient;
+        this.allowedHosts = allowedHosts.stream().map(h -> h.trim().toLowerCase(Locale.ROOT)).toList();
+    }
+
+    public boolean isAllowed(String url) {
+        if (url == null || url.isEmpty()) {
+            return false;
+        }
+        if (cloudStorageClient.localPath(url).isPresent()) {
+            return true;
+        }
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (!"https".equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null || uri.getUserInfo() != null) {
+            return false;
+        }
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        return allowedHosts.stream().anyMatch(allowed -> host.equals(allowed) || host.endsWith("." + allowed));
+    }
+
+    public void check(String url) {
+        if (!isAllowed(url)) {
+            throw new RuntimeException("File URL not allowed");
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.cloudstore.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Local-disk backend. Objects live at {@code <root>/ab/cd/<key>}, so no directory grows beyond a
+ * few hundred entries however many objects are stored. With the root at {@code <upload-dir>/blobs}
+ * this is the layout the blob store has always used, so existing files need no migration.
+ */
+public class ShardedLocalStorageBackend implements StorageBackend {
+    private static final Pattern KEY = Pattern.compile("[A-Za-z0-9_-]{4,128}");
+
+    private final String name;
+    private final Path root;
+    private final UploadStreamWriter uploadStreamWriter;
+
+    public ShardedLocalStorageBackend(String name, Path root, UploadStreamWriter uploadStreamWriter) {
+        this.name = name;
+        this.root = root;
+        this.uploadStreamWriter = uploadStreamWriter;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public Path pathFor(String key) {
+        if (!KEY.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid storage key");
+        }
+        return root.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+    }
+
+    @Override
+    public long put(String key, InputStream in) throws IOException {
+        return uploadStreamWriter.write(in, pathFor(key));
+    }
+
+    @Override
+    public void putFile(String key, Path file) throws IOException {
+        Path target = pathFor(key);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Source is on another filesystem: copy through a temp file so readers never see a partial object
+            try (InputStream in = Files.newInputStream(file)) {
+                uploadStreamWriter.write(in, target);
+            }
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        return Files.newInputStream(pathFor(key));
+    }
+
+    @Override
+    public InputStream getRange(String key, long offset, long length) throws IOException {
+        FileChannel channel = FileChannel.open(pathFor(key), StandardOpenOption.READ);
+        channel.position(offset);
+        return new BoundedInputStream(Channels.newInputStream(channel), length);
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        return Files.deleteIfExists(pathFor(key));
+    }
+
+    @Override
+    public Optional<ObjectStat> stat(String key) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(pathFor(key), BasicFileAttributes.class);
+            return Optional.of(new ObjectStat(attributes.size(), attributes.lastModifiedTime().toMillis()));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        Path path = pathFor(key);
+        return Files.isRegularFile(path) ? Optional.of(path) : Optional.empty();
+    }
+}
@@ -0,0 +1,49 @@
+package com.cloudstore.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Where the bytes of stored files live. Objects are addressed by key (the content hash for blobs)
+ * and are immutable once written. Which backend holds a file is recorded on its {@code Blob} and
+ * {@code File} rows, so backends can be added or changed without touching controllers.
+ */
+public interface StorageBackend {
+
+    // Name recorded on blob and file rows; see StorageBackendRegistry
+    String getName();
+
+    // Stores the stream under key and returns the number of bytes written
+    long put(String key, InputStream in) throws IOException;
+
+    /**
+     * Takes ownership of a fully written local file. Disk-based backends move it into place;
+     * the default streams it and deletes the source.
+     */
+    default void putFile(String key, Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            put(key, in);
+        }
+        Files.deleteIfExists(file);
+    }
+
+    InputStream get(String key) throws IOException;
+
+    // length bytes starting at offset; the stream may end early if the object is shorter
+    InputStream getRange(String key, long offset, long length) throws IOException;
+
+    boolean delete(String key) throws IOException;
+
+    Optional<ObjectStat> stat(String key) throws IOException;
+
+    /**
+     * A local file holding the object, for zero-copy consumers (sendfile, ffmpeg). Empty when the
+     * backend does not keep objects on a local filesystem.
+     */
+    default Optional<Path> localPath(String key) throws IOException {
+        return Optional.empty();
+    }
+}
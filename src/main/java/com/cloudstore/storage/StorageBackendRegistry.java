@@ -0,0 +1,48 @@
+package com.cloudstore.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Looks up storage backends by the name recorded on blob and file rows. New content goes to
+ * {@code storage.default-backend}; rows written before backends existed (no name) are local.
+ */
+@Component
+public class StorageBackendRegistry {
+    public static final String LOCAL = "local";
+
+    private final Map<String, StorageBackend> backends = new HashMap<>();
+    private final StorageBackend defaultBackend;
+
+    public StorageBackendRegistry(List<StorageBackend> backends,
+                                  @Value("${storage.default-backend:local}") String defaultName) {
+        for (StorageBackend backend : backends) {
+            this.backends.put(backend.getName(), backend);
+        }
+        this.defaultBackend = this.backends.get(defaultName);
+        if (defaultBackend == null) {
+            throw new IllegalStateException("Unknown storage.default-backend: " + defaultName);
+        }
+    }
+
+    public StorageBackend getDefault() {
+        return defaultBackend;
+    }
+
+    public Collection<StorageBackend> getAll() {
+        return backends.values();
+    }
+
+    public StorageBackend get(String name) {
+        StorageBackend backend = backends.get(name != null ? name : LOCAL);
+        if (backend == null) {
+            throw new RuntimeException("Storage backend not available: " + name);
+        }
+        return backend;
+    }
+}
@@ -0,0 +1,15 @@
+package com.cloudstore.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import java.nio.file.Path;
+
+@Data
+@AllArgsConstructor
+public class StoredBlob {
+    private String hash;
+    private String backend; // StorageBackend holding the bytes
+    private Path path; // local file holding the bytes, if the backend keeps one
+    private long size;
+    private boolean deduplicated; // true when the content was already stored and no new bytes were kept
+}
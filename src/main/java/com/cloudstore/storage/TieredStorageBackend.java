@@ -0,0 +1,227 @@
+package com.cloudstore.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Two local tiers: new objects land on the hot tier (fast disk), reads stamp the object's access
+ * time, and a periodic sweep demotes objects that have not been read for {@code demote-after}, or
+ * the least recently read ones while the hot tier is over {@code hot-max-bytes}, to the cold tier
+ * (large, slower disk). Reading a cold object serves it from the cold tier and promotes it back in
+ * the background. A key is moved by one promotion or demotion at a time; a delete that lands while
+ * it is in flight is recorded and applied to wherever the move put the object.
+ */
+@Slf4j
+public class TieredStorageBackend implements StorageBackend {
+    public static final String NAME = "tiered";
+
+    private final ShardedLocalStorageBackend hot;
+    private final ShardedLocalStorageBackend cold;
+    private final Duration demoteAfter;
+    private final long hotMaxBytes;
+    // Keys being promoted or demoted, mapped to whether they were deleted meanwhile
+    private final ConcurrentHashMap<String, Boolean> moving = new ConcurrentHashMap<>();
+    private final ExecutorService promoter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "storage-promoter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public TieredStorageBackend(ShardedLocalStorageBackend hot, ShardedLocalStorageBackend cold,
+                                Duration demoteAfter, long hotMaxBytes) {
+        this.hot = hot;
+        this.cold = cold;
+        this.demoteAfter = demoteAfter;
+        this.hotMaxBytes = hotMaxBytes;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    // Both tiers, for scans that have to see every object wherever it currently lives
+    public List<ShardedLocalStorageBackend> getTiers() {
+        return List.of(hot, cold);
+    }
+
+    @Override
+    public long put(String key, InputStream in) throws IOException {
+        long size = hot.put(key, in);
+        moving.computeIfPresent(key, (k, deleted) -> false); // stored again, an earlier delete no longer applies
+        return size;
+    }
+
+    @Override
+    public void putFile(String key, Path file) throws IOException {
+        hot.putFile(key, file);
+        moving.computeIfPresent(key, (k, deleted) -> false);
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        return Channels.newInputStream(open(key));
+    }
+
+    @Override
+    public InputStream getRange(String key, long offset, long length) throws IOException {
+        FileChannel channel = open(key);
+        channel.position(offset);
+        return new BoundedInputStream(Channels.newInputStream(channel), length);
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        moving.computeIfPresent(key, (k, deleted) -> true);
+        boolean deletedHot = hot.delete(key);
+        boolean deletedCold = cold.delete(key);
+        return deletedHot || deletedCold;
+    }
+
+    @Override
+    public Optional<ObjectStat> stat(String key) throws IOException {
+        Optional<ObjectStat> stat = hot.stat(key);
+        return stat.isPresent() ? stat : cold.stat(key);
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) throws IOException {
+        if (hot.localPath(key).isEmpty() && cold.localPath(key).isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(locate(key));
+    }
+
+    // The object may move between tiers between locating and opening it; the retry finds it in the other one
+    private FileChannel open(String key) throws IOException {
+        try {
+            return FileChannel.open(locate(key), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return FileChannel.open(locate(key), StandardOpenOption.READ);
+        }
+    }
+
+    // Resolves the tier holding the object and records the read
+    private Path locate(String key) throws IOException {
+        Optional<Path> hotPath = hot.localPath(key);
+        if (hotPath.isPresent()) {
+            touch(hotPath.get());
+            return hotPath.get();
+        }
+        Path coldPath = cold.localPath(key).orElseThrow(() -> new NoSuchFileException(key));
+        if (moving.putIfAbsent(key, false) == null) {
+            promoter.execute(() -> promote(key));
+        }
+        return coldPath;
+    }
+
+    private void promote(String key) {
+        try (InputStream in = cold.get(key)) {
+            hot.put(key, in);
+            // Readers that already opened the cold copy keep reading it after the unlink
+            cold.delete(key);
+        } catch (IOException e) {
+            log.warn("storage promotion failed key={} error={}", key, e.getMessage());
+        } finally {
+            finishMove(key, hot);
+        }
+    }
+
+    // Ends a promotion or demotion, removing the copy it made if the object was deleted meanwhile
+    private void finishMove(String key, ShardedLocalStorageBackend target) {
+        if (Boolean.TRUE.equals(moving.remove(key))) {
+            try {
+                target.delete(key);
+            } catch (IOException e) {
+                log.warn("could not delete object removed during a tier move key={} error={}", key, e.getMessage());
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${storage.tiered.demote-interval:PT1H}")
+    public void demoteColdObjects() {
+        if (!Files.isDirectory(hot.getRoot())) {
+            return;
+        }
+        List<HotObject> objects = new ArrayList<>();
+        long totalBytes = 0;
+        try (Stream<Path> paths = Files.walk(hot.getRoot(), 3)) {
+            for (Path path : (Iterable<Path>) paths.filter(Files::isRegularFile)::iterator) {
+                String key = path.getFileName().toString();
+                if (key.endsWith(".part")) {
+                    continue;
+                }
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                objects.add(new HotObject(key, path, attributes.size(), attributes.lastAccessTime().toMillis()));
+                totalBytes += attributes.size();
+            }
+        } catch (IOException e) {
+            log.warn("storage demotion scan failed error={}", e.getMessage());
+            return;
+        }
+
+        objects.sort(Comparator.comparingLong(HotObject::lastAccess));
+        long idleCutoff = System.currentTimeMillis() - demoteAfter.toMillis();
+        int demoted = 0;
+        for (HotObject object : objects) {
+            if (object.lastAccess() >= idleCutoff && totalBytes <= hotMaxBytes) {
+                break; // the rest were read more recently
+            }
+            if (moving.putIfAbsent(object.key(), false) != null) {
+                continue; // being promoted, it was just read
+            }
+            try {
+                cold.putFile(object.key(), object.path());
+                totalBytes -= object.size();
+                demoted++;
+            } catch (NoSuchFileException e) {
+                totalBytes -= object.size(); // deleted since the scan
+            } catch (IOException e) {
+                log.warn("storage demotion failed key={} error={}", object.key(), e.getMessage());
+            } finally {
+                finishMove(object.key(), cold);
+            }
+        }
+        if (demoted > 0) {
+            log.info("demoted objects to cold tier count={} hotBytes={}", demoted, totalBytes);
+        }
+    }
+
+    // Explicit access stamp, so demotion works on noatime/relatime mounts too
+    private static void touch(Path path) {
+        try {
+            Files.getFileAttributeView(path, BasicFileAttributeView.class)
+                    .setTimes(null, FileTime.fromMillis(System.currentTimeMillis()), null);
+        } catch (IOException e) {
+            // A missed stamp only makes the object look colder than it is
+        }
+    }
+
+    public void shutdown() {
+        promoter.shutdownNow();
+    }
+
+    private record HotObject(String key, Path path, long size, long lastAccess) {
+    }
+}
@@ -0,0 +1,68 @@
+package com.cloudstore.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Moves upload bodies to disk through NIO channels in fixed-size steps, so the heap cost of an
+ * upload is bounded by {@code file.upload.buffer-size} no matter how large the file is.
+ */
+@Component
+public class UploadStreamWriter {
+    private final int bufferSize;
+
+    public UploadStreamWriter(@Value("${file.upload.buffer-size:65536}") int bufferSize) {
+        this.bufferSize = bufferSize > 0 ? bufferSize : 65536;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Streams {@code in} into {@code target} and returns the number of bytes written. The data is
+     * written to a uniquely named sibling {@code .part} file first and moved into place once
+     * complete, so readers never observe a half-written file and concurrent writers of the same
+     * target never share one.
+     */
+    public long write(InputStream in, Path target) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        if (dir != null && !Files.exists(dir)) {
+            Files.createDirectories(dir);
+        }
+        Path partial = Files.createTempFile(dir, target.getFileName() + ".", ".part");
+        long written;
+        try (ReadableByteChannel source = Channels.newChannel(in);
+             FileChannel destination = FileChannel.open(partial, StandardOpenOption.WRITE)) {
+            written = transfer(source, destination, 0);
+        } catch (IOException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    /**
+     * Copies {@code source} into {@code destination} starting at {@code position} until the source
+     * is exhausted, never asking the kernel for more than one buffer's worth at a time.
+     */
+    public long transfer(ReadableByteChannel source, FileChannel destination, long position) throws IOException {
+        long total = 0;
+        long transferred;
+        while ((transferred = destination.transferFrom(source, position + total, bufferSize)) > 0) {
+            total += transferred;
+        }
+        return total;
+    }
+}
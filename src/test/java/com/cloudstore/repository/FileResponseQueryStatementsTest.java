@@ -0,0 +1,141 @@
+package com.cloudstore.repository;
+
+import com.cloudstore.dto.FileResponse;
+import com.cloudstore.model.File;
+import com.cloudstore.model.Folder;
+import com.cloudstore.model.User;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The list, search and trash endpoints project straight into response DTOs, so each call is one
+ * SQL statement however many files it returns; a lazy association touched per row would show up
+ * here as a statement count that grows with the row count.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.flyway.enabled=false",
+        "spring.sql.init.mode=never"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+class FileResponseQueryStatementsTest {
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private FolderRepository folderRepository;
+
+    private Statistics statistics;
+    private User user;
+    private Folder folder;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+        statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        user = entityManager.persist(User.builder().email("user@example.com").password("secret").build());
+        folder = entityManager.persist(Folder.builder().user(user).name("reports").depth(0).build());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 100})
+    void listingIsOneStatement(int count) {
+        seed(count);
+        FileListQuery.FileListQueryBuilder query = FileListQuery.builder()
+                .user(user)
+                .sort(FileListQuery.SORT_NAME)
+                .ascending(true)
+                .limit(count * 2);
+
+        List<FileResponse> firstPage = statements(() -> fileRepository.findPage(query.build()));
+        assertThat(firstPage).hasSize(count * 2);
+
+        FileResponse first = firstPage.get(0);
+        assertThat(statements(() -> fileRepository.findPage(query.cursorValue(first.getName()).cursorId(first.getId()).build())))
+                .hasSize(count * 2 - 1);
+        assertThat(statements(() -> fileRepository.findPage(query.folderId(folder.getId()).cursorValue(null).cursorId(null).build())))
+                .hasSize(count);
+        assertThat(statements(() -> folderRepository.findResponsesByUser(user))).hasSize(1);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 100})
+    void searchIsOneStatement(int count) {
+        seed(count);
+
+        assertThat(statements(() -> fileRepository.searchByName(user.getId(), "report", "%report%", "report%", 1000, 0)))
+                .hasSize(count * 2);
+        assertThat(statements(() -> fileRepository.searchByNameLike(user, "%report%", PageRequest.of(0, 1000))))
+                .hasSize(count * 2);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 100})
+    void trashIsOneStatement(int count) {
+        seed(count);
+
+        assertThat(statements(() -> fileRepository.findDeletedResponses(user))).hasSize(count * 2);
+        assertThat(statements(() -> fileRepository.findDeletedResponsesInFolder(user, folder.getId()))).hasSize(count);
+    }
+
+    // Runs the call on an empty persistence context and checks it prepared exactly one statement
+    private <T> T statements(Supplier<T> call) {
+        entityManager.clear();
+        statistics.clear();
+        T result = call.get();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        return result;
+    }
+
+    // count live and count deleted files each in the folder and at the top level
+    private void seed(int count) {
+        for (int i = 0; i < count; i++) {
+            for (boolean deleted : new boolean[]{false, true}) {
+                entityManager.persist(file("report-" + i + ".pdf", folder, deleted));
+                entityManager.persist(file("report-top-" + i + ".pdf", null, deleted));
+            }
+        }
+        entityManager.flush();
+    }
+
+    private File file(String name, Folder folder, boolean deleted) {
+        return File.builder()
+                .user(user)
+                .name(name)
+                .size(1024L)
+                .folder(folder)
+                .deleted(deleted)
+                .build();
+    }
+}
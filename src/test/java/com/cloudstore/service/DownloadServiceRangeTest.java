@@ -0,0 +1,81 @@
+package com.cloudstore.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Range and If-Range handling of downloads; a bad answer here sends the wrong bytes as a 206 or
+ * stitches a resumed download together from two versions of a file.
+ */
+class DownloadServiceRangeTest {
+    private static final long LENGTH = 1000;
+    private static final String ETAG = "\"abc123\"";
+    private static final long LAST_MODIFIED = 1_700_000_000_000L;
+
+    @Test
+    void resolvesSingleRanges() {
+        assertThat(DownloadService.resolveRanges("bytes=0-99", LENGTH)).containsExactly(new long[] {0, 99});
+        assertThat(DownloadService.resolveRanges("bytes=500-", LENGTH)).containsExactly(new long[] {500, 999});
+        assertThat(DownloadService.resolveRanges("bytes=-100", LENGTH)).containsExactly(new long[] {900, 999});
+        assertThat(DownloadService.resolveRanges("bytes=900-5000", LENGTH)).containsExactly(new long[] {900, 999});
+    }
+
+    @Test
+    void resolvesMultipleRanges() {
+        List<long[]> ranges = DownloadService.resolveRanges("bytes=0-9,20-29", LENGTH);
+
+        assertThat(ranges).containsExactly(new long[] {0, 9}, new long[] {20, 29});
+    }
+
+    @Test
+    void dropsRangesOutsideTheFile() {
+        assertThat(DownloadService.resolveRanges("bytes=0-9,2000-2999", LENGTH)).containsExactly(new long[] {0, 9});
+        assertThat(DownloadService.resolveRanges("bytes=1000-", LENGTH)).isEmpty();
+    }
+
+    @Test
+    void rejectsMalformedHeaders() {
+        assertThat(DownloadService.resolveRanges("items=0-9", LENGTH)).isEmpty();
+        assertThat(DownloadService.resolveRanges("bytes=9-0", LENGTH)).isEmpty();
+        assertThat(DownloadService.resolveRanges("bytes=abc", LENGTH)).isEmpty();
+    }
+
+    @Test
+    void rejectsRangesAskingForMoreThanTheFile() {
+        assertThat(DownloadService.resolveRanges("bytes=0-999,0-999", LENGTH)).isEmpty();
+    }
+
+    @Test
+    void ifRangeAbsentAlwaysMatches() {
+        assertThat(DownloadService.ifRangeMatches(new MockHttpServletRequest(), ETAG, LAST_MODIFIED)).isTrue();
+    }
+
+    @Test
+    void ifRangeMatchesOnlyTheCurrentStrongEtag() {
+        assertThat(DownloadService.ifRangeMatches(ifRange(ETAG), ETAG, LAST_MODIFIED)).isTrue();
+        assertThat(DownloadService.ifRangeMatches(ifRange("\"other\""), ETAG, LAST_MODIFIED)).isFalse();
+        assertThat(DownloadService.ifRangeMatches(ifRange("W/" + ETAG), ETAG, LAST_MODIFIED)).isFalse();
+    }
+
+    @Test
+    void ifRangeDateMatchesTheLastModifiedSecond() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setDate(HttpHeaders.IF_RANGE, LAST_MODIFIED);
+        String date = headers.getFirst(HttpHeaders.IF_RANGE);
+
+        assertThat(DownloadService.ifRangeMatches(ifRange(date), ETAG, LAST_MODIFIED + 400)).isTrue();
+        assertThat(DownloadService.ifRangeMatches(ifRange(date), ETAG, LAST_MODIFIED + 5000)).isFalse();
+        assertThat(DownloadService.ifRangeMatches(ifRange("not a date"), ETAG, LAST_MODIFIED)).isFalse();
+    }
+
+    private static MockHttpServletRequest ifRange(String value) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_RANGE, value);
+        return request;
+    }
+}
@@ -0,0 +1,69 @@
+package com.cloudstore.service;
+
+import com.cloudstore.dto.FileResponse;
+import com.cloudstore.repository.FileListQuery;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Keyset cursors of the file listing: a cursor decodes back to the sort value and id of the row it
+ * was made from, and anything else a client sends is refused rather than turned into a query.
+ */
+class FileServiceCursorTest {
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2024, 3, 1, 12, 30, 15, 123_456_000);
+
+    @Test
+    void nameCursorRoundTrips() {
+        FileListQuery query = decode(FileService.encodeCursor(file(42L, "notes: q1.txt"), FileListQuery.SORT_NAME),
+                FileListQuery.SORT_NAME);
+
+        assertThat(query.getCursorId()).isEqualTo(42L);
+        assertThat(query.getCursorValue()).isEqualTo("notes: q1.txt");
+    }
+
+    @Test
+    void createdAtCursorRoundTrips() {
+        FileListQuery query = decode(FileService.encodeCursor(file(7L, "a.txt"), FileListQuery.SORT_CREATED_AT),
+                FileListQuery.SORT_CREATED_AT);
+
+        assertThat(query.getCursorId()).isEqualTo(7L);
+        assertThat(query.getCursorValue()).isEqualTo(CREATED_AT);
+    }
+
+    @Test
+    void cursorIsUrlSafe() {
+        String cursor = FileService.encodeCursor(file(1L, "??>>~~.txt"), FileListQuery.SORT_NAME);
+
+        assertThat(cursor).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        for (String cursor : new String[] {"not base64!", encode("no-separator"), encode("abc:name"),
+                encode("5:not-a-date")}) {
+            assertThatThrownBy(() -> decode(cursor, FileListQuery.SORT_CREATED_AT))
+                    .as(cursor)
+                    .hasMessage("Invalid cursor");
+        }
+    }
+
+    private static FileListQuery decode(String cursor, String sort) {
+        FileListQuery.FileListQueryBuilder query = FileListQuery.builder().sort(sort);
+        FileService.decodeCursor(cursor, sort, query);
+        return query.build();
+    }
+
+    private static FileResponse file(Long id, String name) {
+        return new FileResponse(id, name, 10L, false, false, null, CREATED_AT, CREATED_AT, null);
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,61 @@
+package com.cloudstore.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * ffmpeg opens whatever protocol its input names (concat, subfile, data, ...), so only stdin, an
+ * absolute local file and an http(s) URL may reach it, each with the narrowest whitelist.
+ */
+class VideoTranscoderProtocolWhitelistTest {
+
+    @Test
+    void stdinOnlyAllowsPipes() {
+        assertThat(VideoTranscoder.protocolWhitelist("pipe:0", true)).isEqualTo("file,pipe");
+    }
+
+    @Test
+    void absoluteLocalFile() {
+        assertThat(VideoTranscoder.protocolWhitelist("file:/var/uploads/clip.mp4", false)).isEqualTo("file,pipe");
+    }
+
+    @Test
+    void remoteUrl() {
+        assertThat(VideoTranscoder.protocolWhitelist("https://cdn.example.com/clip.mp4", false))
+                .isEqualTo("http,https,tcp,tls");
+        assertThat(VideoTranscoder.protocolWhitelist("HTTP://cdn.example.com/clip.mp4", false))
+                .isEqualTo("http,https,tcp,tls");
+    }
+
+    @Test
+    void stdinMustBeThePipe() {
+        assertThatThrownBy(() -> VideoTranscoder.protocolWhitelist("file:/var/uploads/clip.mp4", true))
+                .hasMessage("Invalid ffmpeg input");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "file:relative/clip.mp4",
+            "concat:/etc/passwd|/var/uploads/clip.mp4",
+            "subfile,,start,0,end,100,,:/etc/passwd",
+            "data:video/mp4;base64,AAAA",
+            "ftp://example.com/clip.mp4",
+            "https:///clip.mp4",
+            "/var/uploads/clip.mp4",
+            "http://exa mple.com/clip.mp4"
+    })
+    void refusesEverythingElse(String input) {
+        assertThatThrownBy(() -> VideoTranscoder.protocolWhitelist(input, false))
+                .hasMessage("Invalid ffmpeg input");
+    }
+
+    @Test
+    void refusesMissingInput() {
+        assertThatThrownBy(() -> VideoTranscoder.protocolWhitelist(null, false))
+                .hasMessage("Invalid ffmpeg input");
+    }
+}